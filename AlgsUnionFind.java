@@ -0,0 +1,37 @@
+import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+
+/*
+ * UnionFind backed by algs4's WeightedQuickUnionUF (weighting, no path compression).
+ * Kept as the reference backend to compare GridUnionFind against.
+ */
+class AlgsUnionFind implements UnionFind {
+
+    private final int count;
+    private WeightedQuickUnionUF uf;
+
+    AlgsUnionFind(int n) {
+        count = n;
+        uf = new WeightedQuickUnionUF(n);
+    }
+
+    @Override
+    public int find(int p) {
+        return uf.find(p);
+    }
+
+    @Override
+    public void union(int p, int q) {
+        uf.union(p, q);
+    }
+
+    // WeightedQuickUnionUF cannot be cleared, so this one allocates
+    @Override
+    public void reset() {
+        uf = new WeightedQuickUnionUF(count);
+    }
+
+    @Override
+    public boolean connected(int p, int q) {
+        return uf.connected(p, q);
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Buffered little-endian reads and writes of ints, longs and whole primitive
+ * arrays over a FileChannel, for the snapshot and cache files. Arrays are moved through
+ * one direct buffer with bulk IntBuffer/LongBuffer copies, not element by element.
+ * Writes are buffered until flush(); writeAtomically() replaces a whole file.
+ */
+class BinaryChannel {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    // the contents of a file written by writeAtomically()
+    interface Body {
+        void writeTo(BinaryChannel out) throws IOException;
+    }
+
+    // wraps channel; reading starts at its current position
+    BinaryChannel(FileChannel channel, boolean forReading) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (forReading) {
+            buffer.limit(0);
+        }
+    }
+
+    // makes room for at least bytes more bytes in the write buffer
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    // makes at least bytes unread bytes available in the read buffer
+    private void fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    void putInt(int value) throws IOException {
+        reserve(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        reserve(8);
+        buffer.putLong(value);
+    }
+
+    void putInts(int[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            reserve(4);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 2);
+            buffer.asIntBuffer().put(values, done, count);
+            buffer.position(buffer.position() + (count << 2));
+            done += count;
+        }
+    }
+
+    void putLongs(long[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            reserve(8);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 3);
+            buffer.asLongBuffer().put(values, done, count);
+            buffer.position(buffer.position() + (count << 3));
+            done += count;
+        }
+    }
+
+    void putDoubles(double[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            reserve(8);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 3);
+            buffer.asDoubleBuffer().put(values, done, count);
+            buffer.position(buffer.position() + (count << 3));
+            done += count;
+        }
+    }
+
+    int getInt() throws IOException {
+        fill(4);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        fill(8);
+        return buffer.getLong();
+    }
+
+    void getInts(int[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            fill(4);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 2);
+            buffer.asIntBuffer().get(values, done, count);
+            buffer.position(buffer.position() + (count << 2));
+            done += count;
+        }
+    }
+
+    void getLongs(long[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            fill(8);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 3);
+            buffer.asLongBuffer().get(values, done, count);
+            buffer.position(buffer.position() + (count << 3));
+            done += count;
+        }
+    }
+
+    void getDoubles(double[] values) throws IOException {
+        for (int done = 0; done < values.length; ) {
+            fill(8);
+            int count = Math.min(values.length - done, buffer.remaining() >>> 3);
+            buffer.asDoubleBuffer().get(values, done, count);
+            buffer.position(buffer.position() + (count << 3));
+            done += count;
+        }
+    }
+
+    // writes out everything buffered so far
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // replaces file by what body writes: the bytes go to file.tmp, are forced to disk and then
+    // moved over file, so a crash never leaves a torn file and a failed write leaves file as it was
+    static void writeAtomically(Path file, Body body) throws IOException {
+        Path tmp = Paths.get(file + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                BinaryChannel out = new BinaryChannel(channel, false);
+                body.writeTo(out);
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+}
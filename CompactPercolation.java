@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+public class CompactPercolation {
+
+    /*
+    * The Component Map design from the header of Percolation.java:
+    * a single union-find over the n^2 sites (no virtual sites) plus one state byte per site.
+    * The byte of a component root holds the state of the whole component:
+    *   BLOCK - the site is blocked,
+    *   OPEN  - an open component touching neither the top nor the bottom row,
+    *   FULL  - the component touches the top row,
+    *   EMPTY - the component touches the bottom row.
+    * When an EMPTY component joins a FULL one the system percolates and the result stays FULL,
+    * so isFull never sees backwash from the bottom row.
+    * Non-root bytes keep the state they had when the site was opened, which is never BLOCK,
+    * so isOpen does not need a find.
+    * Memory: 8 bytes per site in the union-find plus 1 byte of state, about 9 n^2 bytes.
+    */
+
+    private static final byte BLOCK = 0;
+    private static final byte OPEN = 1;
+    private static final byte FULL = 2;
+    private static final byte EMPTY = 3;
+
+    // largest n whose n x n grid has int indices
+    static final int MAX_SIDE = 46340;
+
+    private final int sideLen;
+    private final UnionFind sites;
+    private final byte[] state;
+    private int numOfOpenSites = 0;
+    private boolean percolated = false;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public CompactPercolation(int n) {
+        this(n, GridUnionFind::new);
+    }
+
+    // creates n-by-n grid backed by the given union-find implementation
+    CompactPercolation(int n, IntFunction<UnionFind> unionFind) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        if ((long) n * n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The grid is too large: it needs n^2 <= "
+                    + Integer.MAX_VALUE + " sites, so n <= " + MAX_SIDE);
+        }
+        sideLen = n;
+        sites = unionFind.apply(n * n);
+        state = new byte[n * n];
+    }
+
+    // blocks every site again, reusing the state array and the union-find
+    public void reset() {
+        Arrays.fill(state, BLOCK);
+        sites.reset();
+        numOfOpenSites = 0;
+        percolated = false;
+    }
+
+    private void isIndex(int row, int col) {
+        if (row <= 0 || row > sideLen) {
+            throw new IllegalArgumentException("The row index is out of range");
+        }
+        if (col <= 0 || col > sideLen) {
+            throw new IllegalArgumentException("The col index is out of range");
+        }
+    }
+
+    // get index to connect 2D [n][n]array with 1D [n*n]array
+    private int getIndex(int row, int col) {
+        return sideLen * (row - 1) + col - 1;
+    }
+
+    // state of the component formed by joining components in states a and b
+    private byte merge(byte a, byte b) {
+        if (a == FULL || b == FULL) {
+            if (a == EMPTY || b == EMPTY) {
+                percolated = true;
+            }
+            return FULL;
+        }
+        if (a == EMPTY || b == EMPTY) {
+            return EMPTY;
+        }
+        return OPEN;
+    }
+
+    // joins the open site idx with the site nb if nb is open
+    private void join(int idx, int nb) {
+        if (state[nb] == BLOCK) {
+            return;
+        }
+        int rootA = sites.find(idx);
+        int rootB = sites.find(nb);
+        if (rootA == rootB) {
+            return;
+        }
+        byte joined = merge(state[rootA], state[rootB]);
+        state[sites.link(rootA, rootB)] = joined;
+    }
+
+    // opens the site (row, col) if it is not open already
+    public void open(int row, int col) {
+        isIndex(row, col);
+        openSite(getIndex(row, col));
+    }
+
+    // opens the site at 0-based row-major index idx, without validation
+    void openSite(int idx) {
+        if (state[idx] != BLOCK) {
+            return;
+        }
+        numOfOpenSites += 1;
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.OPENS.increment();
+        }
+
+        int row = idx / sideLen;
+        int col = idx - row * sideLen;
+        byte own = OPEN;
+        if (row == 0) {
+            own = FULL;
+        }
+        if (row == sideLen - 1) {
+            own = merge(own, EMPTY);
+        }
+        state[idx] = own;
+
+        if (row > 0) {
+            join(idx, idx - sideLen);
+        }
+        if (row < sideLen - 1) {
+            join(idx, idx + sideLen);
+        }
+        if (col > 0) {
+            join(idx, idx - 1);
+        }
+        if (col < sideLen - 1) {
+            join(idx, idx + 1);
+        }
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        isIndex(row, col);
+        return state[getIndex(row, col)] != BLOCK;
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        isIndex(row, col);
+        int idx = getIndex(row, col);
+        return state[idx] != BLOCK && state[sites.find(idx)] == FULL;
+    }
+
+    // returns the number of open sites
+    public int numberOfOpenSites() {
+        return numOfOpenSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolated;
+    }
+
+    // test
+    public static void main(String[] args) {
+        CompactPercolation test = new CompactPercolation(3);
+        test.open(1, 1);
+        test.open(3, 3);
+        test.open(2, 3);
+        System.out.println(test.isFull(3, 3) + " " + test.percolates());
+        test.open(2, 1);
+        test.open(2, 2);
+        System.out.println(test.isFull(3, 3) + " " + test.percolates());
+        System.out.println(test.numberOfOpenSites());
+    }
+}
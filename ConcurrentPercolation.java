@@ -0,0 +1,179 @@
+/******************************************************************************
+ *  Compilation:  javac ConcurrentPercolation.java
+ *  Execution:    java ConcurrentPercolation n threads
+ *  Dependencies: ConcurrentUnionFind.java Percolation.java Workers.java
+ *
+ *  A percolation grid that any number of threads may open sites of at the
+ *  same time. Same layout as Percolation: a padded (n + 2) x (n + 2) grid
+ *  whose top and bottom border rows are always open, with two union-finds,
+ *  one joining the top border to the bottom one (percolates) and one joining
+ *  only the top border (isFull, without backwash).
+ *
+ *  Opening a site sets its bit with a CAS; the thread that set it counts it
+ *  and joins it with its open neighbours. When two neighbours are opened at
+ *  once, both bits are set before either thread looks at the other, so at
+ *  least one of them makes the union. isFull() and percolates() are the
+ *  linearizable same-set query of the lock-free union-find.
+ *
+ *  The main method opens the sites of a random order of the whole grid from
+ *  the given number of threads and prints the opens per second.
+ *
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrentPercolation {
+
+    private final int sideLen;
+    private final int stride;
+    private final ConcurrentUnionFind percGrid;
+    private final ConcurrentUnionFind connectGrid;
+    // open bitset of the padded grid, bit getIndex(row, col)
+    private final AtomicLongArray stateGrid;
+    private final LongAdder numOfOpenSites = new LongAdder();
+    private final int upVNode = 0;
+    private final int botVNode;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public ConcurrentPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        if ((long) (n + 2) * (n + 2) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The grid is too large: the padded grid needs (n + 2)^2 <= "
+                    + Integer.MAX_VALUE + " sites, so n <= " + Percolation.MAX_SIDE);
+        }
+        sideLen = n;
+        stride = n + 2;
+        stateGrid = new AtomicLongArray((stride * stride + 63) >>> 6);
+        connectGrid = new ConcurrentUnionFind(stride * stride);
+        percGrid = new ConcurrentUnionFind(stride * stride);
+        botVNode = getIndex(sideLen + 1, 0);
+
+        // the border rows are open; the top one is the virtual top node in both union-finds,
+        // the bottom one the virtual bottom node in percGrid only
+        for (int col = 1; col <= sideLen; ++col) {
+            setBit(getIndex(0, col));
+            setBit(getIndex(sideLen + 1, col));
+            connectGrid.union(upVNode, getIndex(0, col));
+            percGrid.union(upVNode, getIndex(0, col));
+            percGrid.union(botVNode, getIndex(sideLen + 1, col));
+        }
+    }
+
+    private void isIndex(int row, int col) {
+        if (row <= 0 || row > sideLen) {
+            throw new IllegalArgumentException("The row index is out of range");
+        }
+        if (col <= 0 || col > sideLen) {
+            throw new IllegalArgumentException("The col index is out of range");
+        }
+    }
+
+    // get index of (row, col) in the flat padded grid, row and col in [0, n + 1]
+    private int getIndex(int row, int col) {
+        return stride * row + col;
+    }
+
+    private boolean isSet(int idx) {
+        return (stateGrid.get(idx >>> 6) & (1L << idx)) != 0;
+    }
+
+    // sets the bit of idx; true if this call set it
+    private boolean setBit(int idx) {
+        int w = idx >>> 6;
+        long bit = 1L << idx;
+        while (true) {
+            long word = stateGrid.get(w);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (stateGrid.compareAndSet(w, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    // opens the site (row, col) if it is not open already; safe to call from any thread
+    public void open(int row, int col) {
+        isIndex(row, col);
+        int idx = getIndex(row, col);
+        if (!setBit(idx)) {
+            return;
+        }
+        numOfOpenSites.increment();
+
+        join(idx, idx - stride);
+        join(idx, idx + stride);
+        join(idx, idx - 1);
+        join(idx, idx + 1);
+    }
+
+    // joins the open site idx with its neighbour nb if nb is open
+    private void join(int idx, int nb) {
+        if (isSet(nb)) {
+            percGrid.union(idx, nb);
+            connectGrid.union(idx, nb);
+        }
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        isIndex(row, col);
+        return isSet(getIndex(row, col));
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        isIndex(row, col);
+        int idx = getIndex(row, col);
+        return isSet(idx) && connectGrid.connected(upVNode, idx);
+    }
+
+    // returns the number of open sites; exact once no open() is running
+    public int numberOfOpenSites() {
+        return numOfOpenSites.intValue();
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percGrid.connected(upVNode, botVNode);
+    }
+
+    // test: opens every site of a random order, split between the threads
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        int total = n * n;
+        int[] order = new int[total];
+        for (int i = 0; i < total; ++i) {
+            order[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = total - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        ConcurrentPercolation grid = new ConcurrentPercolation(n);
+        long elapsed;
+        try (Workers workers = new Workers(threads)) {
+            long start = System.nanoTime();
+            workers.run(threads, t -> {
+                int from = (int) ((long) total * t / threads);
+                int to = (int) ((long) total * (t + 1) / threads);
+                for (int i = from; i < to; ++i) {
+                    grid.open(order[i] / n + 1, order[i] % n + 1);
+                }
+            });
+            elapsed = System.nanoTime() - start;
+        }
+
+        System.out.println(grid.numberOfOpenSites() + " open sites, " + (grid.percolates() ? "percolates" : "does not percolate"));
+        System.out.printf("%,.0f opens/s with %d threads%n", total * 1e9 / elapsed, threads);
+    }
+}
@@ -0,0 +1,64 @@
+/******************************************************************************
+ *  Compilation:  javac ConcurrentPercolationCheck.java
+ *  Execution:    java ConcurrentPercolationCheck [trials [threads [seed]]]
+ *  Dependencies: ConcurrentPercolation.java Percolation.java Workers.java GridCheck.java
+ *
+ *  Differential check of ConcurrentPercolation against Percolation.
+ *  Each trial draws a random grid size and a random list of sites, opens
+ *  the list on a Percolation from one thread, and on a ConcurrentPercolation
+ *  from several threads at once, each thread taking every threads-th site
+ *  and querying isFull() and percolates() as it goes. Afterwards both grids
+ *  must agree on every site, the open count and percolates(); the final
+ *  state does not depend on the order the sites were opened in.
+ *
+ *  Prints "ok" or stops with an AssertionError naming the first mismatch.
+ *  Run by the test phase of the core module.
+ *
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+
+public class ConcurrentPercolationCheck {
+
+    private ConcurrentPercolationCheck() {
+    }
+
+    private static void check(String where, SplittableRandom random, int threads) {
+        int n = GridCheck.side(random, 60, 300);
+        int[] sites = GridCheck.sites(random, n, 0.4, 0.8);
+        int k = sites.length / 2;
+
+        Percolation expected = new Percolation(n);
+        for (int i = 0; i < k; ++i) {
+            expected.open(sites[2 * i], sites[2 * i + 1]);
+        }
+
+        ConcurrentPercolation grid = new ConcurrentPercolation(n);
+        try (Workers workers = new Workers(threads)) {
+            workers.run(threads, t -> {
+                for (int i = t; i < k; i += threads) {
+                    grid.open(sites[2 * i], sites[2 * i + 1]);
+                    grid.isFull(sites[2 * i], sites[2 * i + 1]);
+                    grid.percolates();
+                }
+            });
+        }
+
+        GridCheck.compare(where + " (n = " + n + "): ", expected, n, grid.numberOfOpenSites(), grid.percolates(),
+                grid::isOpen, grid::isFull);
+    }
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 19;
+        if (trials <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int trial = 0; trial < trials; ++trial) {
+            check("seed " + seed + ", trial " + trial, random, threads);
+        }
+        System.out.println("ok");
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+ * Lock-free union-find for the concurrent grid (Anderson and Woll; Jayanti and Tarjan).
+ * Roots are linked by a fixed random priority of each element, a hash of its index,
+ * instead of by size: a link is then a single CAS on the parent of the lower root,
+ * and priorities strictly increase towards the root, so no cycle can form.
+ * find() halves paths with CAS; a lost CAS just means another thread shortened the path.
+ * All operations are linearizable; connected() is the same-set query of Anderson and Woll,
+ * which re-checks that the first root is still a root.
+ */
+class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent;
+
+    ConcurrentUnionFind(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of elements is < 0");
+        }
+        parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; ++i) {
+            parent.set(i, i);
+        }
+    }
+
+    // random but fixed priority of element p (MurmurHash3 finalizer)
+    private static int priority(int p) {
+        p ^= p >>> 16;
+        p *= 0x85EBCA6B;
+        p ^= p >>> 13;
+        p *= 0xC2B2AE35;
+        return p ^ (p >>> 16);
+    }
+
+    // is the root p linked below the root q, not the other way round?
+    private static boolean below(int p, int q) {
+        int priorityP = priority(p);
+        int priorityQ = priority(q);
+        return priorityP < priorityQ || (priorityP == priorityQ && p < q);
+    }
+
+    // root of p, with path halving
+    int find(int p) {
+        while (true) {
+            int up = parent.get(p);
+            if (up == p) {
+                return p;
+            }
+            int grand = parent.get(up);
+            if (grand != up) {
+                parent.compareAndSet(p, up, grand);
+            }
+            p = grand;
+        }
+    }
+
+    void union(int p, int q) {
+        while (true) {
+            p = find(p);
+            q = find(q);
+            if (p == q) {
+                return;
+            }
+            if (below(q, p)) {
+                int swap = p;
+                p = q;
+                q = swap;
+            }
+            // fails if p stopped being a root meanwhile; then start over from the new roots
+            if (parent.compareAndSet(p, p, q)) {
+                return;
+            }
+        }
+    }
+
+    // are p and q in the same set? if the roots differ, the answer is only
+    // final once the root of p is seen to still be a root after q's was found
+    boolean connected(int p, int q) {
+        while (true) {
+            p = find(p);
+            q = find(q);
+            if (p == q) {
+                return true;
+            }
+            if (parent.get(p) == p) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.SplittableRandom;
+
+/*
+ * Fixtures shared by the differential checks (ConcurrentPercolationCheck,
+ * PercolationBuildCheck): random grids and site lists, and the site-by-site
+ * comparison of a grid with a Percolation that opened the same sites.
+ * Like the checks, it is compiled and run by the test phase of the core
+ * module and is not part of the jar.
+ */
+final class GridCheck {
+
+    // a query of the grid under test at (row, col)
+    interface SiteQuery {
+        boolean test(int row, int col);
+    }
+
+    private GridCheck() {
+    }
+
+    // side of a random grid: up to small, one time in four up to large
+    static int side(SplittableRandom random, int small, int large) {
+        return 1 + random.nextInt(random.nextInt(4) == 0 ? large : small);
+    }
+
+    // row and column pairs of between minFill and maxFill n^2 random sites, repeats included
+    static int[] sites(SplittableRandom random, int n, double minFill, double maxFill) {
+        int k = (int) (n * n * (minFill + (maxFill - minFill) * random.nextDouble()));
+        int[] sites = new int[2 * k];
+        for (int i = 0; i < sites.length; ++i) {
+            sites[i] = 1 + random.nextInt(n);
+        }
+        return sites;
+    }
+
+    // throws an AssertionError starting with where if the grid under test, given by its open count,
+    // percolates() and its two site queries, differs from expected
+    static void compare(String where, Percolation expected, int n, int openSites, boolean percolates,
+                        SiteQuery isOpen, SiteQuery isFull) {
+        if (openSites != expected.numberOfOpenSites()) {
+            throw new AssertionError(where + openSites + " open sites, expected " + expected.numberOfOpenSites());
+        }
+        if (percolates != expected.percolates()) {
+            throw new AssertionError(where + "percolates() is " + percolates);
+        }
+        for (int row = 1; row <= n; ++row) {
+            for (int col = 1; col <= n; ++col) {
+                if (isOpen.test(row, col) != expected.isOpen(row, col)
+                        || isFull.test(row, col) != expected.isFull(row, col)) {
+                    throw new AssertionError(where + "site (" + row + ", " + col + ") differs");
+                }
+            }
+        }
+    }
+}
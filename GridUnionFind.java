@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Union-find over a flat int[] for the percolation grids:
+ * union by size and path halving, no objects per element.
+ * Elements are the grid indices themselves (row-major, see getIndex in the grids),
+ * so neighbouring sites of a row sit next to each other in memory.
+ */
+class GridUnionFind implements UnionFind {
+
+    private final int[] parent;
+    private final int[] size;
+
+    GridUnionFind(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of elements is < 0");
+        }
+        parent = new int[n];
+        size = new int[n];
+        reset();
+    }
+
+    private GridUnionFind(int[] parent, int[] size) {
+        this.parent = parent;
+        this.size = size;
+    }
+
+    // reuses both arrays, no allocation
+    @Override
+    public void reset() {
+        for (int i = 0; i < parent.length; ++i) {
+            parent[i] = i;
+        }
+        Arrays.fill(size, 1);
+    }
+
+    // writes the element count, the parent and the size arrays
+    void writeTo(BinaryChannel out) throws IOException {
+        out.putInt(parent.length);
+        out.putInts(parent);
+        out.putInts(size);
+    }
+
+    // reads a union-find of n elements written by writeTo()
+    static GridUnionFind readFrom(BinaryChannel in, int n) throws IOException {
+        if (in.getInt() != n) {
+            throw new IllegalArgumentException("Corrupt union-find in snapshot");
+        }
+        int[] parent = new int[n];
+        int[] size = new int[n];
+        in.getInts(parent);
+        in.getInts(size);
+        return new GridUnionFind(parent, size);
+    }
+
+    // path halving: every visited element is re-linked to its grandparent
+    @Override
+    public int find(int p) {
+        if (PercolationMetrics.ENABLED) {
+            return findCounted(p);
+        }
+        int[] par = parent;
+        while (par[p] != p) {
+            par[p] = par[par[p]];
+            p = par[p];
+        }
+        return p;
+    }
+
+    // find() that records the number of steps it took
+    private int findCounted(int p) {
+        int[] par = parent;
+        int depth = 0;
+        while (par[p] != p) {
+            par[p] = par[par[p]];
+            p = par[p];
+            ++depth;
+        }
+        PercolationMetrics.FIND_DEPTH.record(depth);
+        return p;
+    }
+
+    // find() without path halving: only reads the parent array
+    @Override
+    public int root(int p) {
+        int[] par = parent;
+        while (par[p] != p) {
+            p = par[p];
+        }
+        return p;
+    }
+
+    @Override
+    public void union(int p, int q) {
+        int rootP = find(p);
+        int rootQ = find(q);
+        if (rootP != rootQ) {
+            link(rootP, rootQ);
+        }
+    }
+
+    // attaches the smaller tree under the larger one; every merge of two sets goes through here,
+    // so this is where the metrics count unions
+    @Override
+    public int link(int rootP, int rootQ) {
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.UNIONS.increment();
+        }
+        if (size[rootP] < size[rootQ]) {
+            parent[rootP] = rootQ;
+            size[rootQ] += size[rootP];
+            return rootQ;
+        }
+        parent[rootQ] = rootP;
+        size[rootP] += size[rootQ];
+        return rootP;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Concurrent histogram of non-negative longs (latencies in nanoseconds, find depths)
+ * with HdrHistogram-style log-linear buckets: a value is bucketed by its highest set bit
+ * and the SUB_BITS bits below it, so a reported value is within 1 / 2^SUB_BITS of the
+ * recorded one over the whole long range, with a fixed number of buckets.
+ * Every bucket is a striped LongAdder, so recording from many threads does not contend.
+ */
+class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    // largest value that falls into the bucket
+    private static long highestIn(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long lowest = (long) (SUB_COUNT | (bucket & (SUB_COUNT - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)].increment();
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    double mean() {
+        long n = total.sum();
+        return n == 0 ? Double.NaN : (double) sum.sum() / n;
+    }
+
+    // value at the given percentile in [0, 100], 0 if nothing was recorded
+    long percentile(double percentile) {
+        long n = total.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i].sum();
+            if (seen >= rank) {
+                return Math.min(highestIn(i), max());
+            }
+        }
+        return max();
+    }
+
+    void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d",
+                count(), mean(), percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+    }
+}
@@ -1,14 +1,17 @@
 /******************************************************************************
  *  Compilation:  javac InteractivePercolationVisualizer.java
  *  Execution:    java InteractivePercolationVisualizer n
- *  Dependencies: PercolationVisualizer.java Percolation.java
- *                StdDraw.java StdOut.java
+ *  Dependencies: PercolationVisualizer.java PercolationRenderer.java
+ *                PercolationEventStream.java Percolation.java StdDraw.java StdOut.java
  *
  *  This program takes the grid size n as a command-line argument.
  *  Then, the user repeatedly clicks sites to open with the mouse.
  *  After each site is opened, it draws full sites in light blue,
  *  open sites (that aren't full) in white, and blocked sites in black.
  *
+ *  The main thread only reads the mouse and opens sites; the drawing is done
+ *  by the renderer on the thread of a PercolationEventStream subscription.
+ *
  ******************************************************************************/
 
 import edu.princeton.cs.algs4.StdDraw;
@@ -26,8 +29,14 @@ public class InteractivePercolationVisualizer {
 
         StdDraw.enableDoubleBuffering();
         Percolation perc = new Percolation(n);
-        PercolationVisualizer.draw(perc, n);
-        StdDraw.show();
+        PercolationRenderer renderer = new PercolationRenderer(perc, n, 0);
+        renderer.drawAll();
+        renderer.show(true);
+
+        // a ring that holds every event of a run: each site is opened and becomes full once
+        PercolationEventStream events = new PercolationEventStream();
+        events.subscribe(renderer, (int) Math.min(2L * n * n + 1, 1 << 30));
+        perc.publishTo(events);
 
         while (true) {
 
@@ -49,10 +58,6 @@ public class InteractivePercolationVisualizer {
                     }
                     perc.open(i, j);
                 }
-
-                // draw n-by-n percolation system
-                PercolationVisualizer.draw(perc, n);
-                StdDraw.show();
             }
 
             StdDraw.pause(20);
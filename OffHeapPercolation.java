@@ -0,0 +1,261 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+public class OffHeapPercolation implements AutoCloseable {
+
+    /*
+    * The Component Map design of CompactPercolation, stored outside the Java heap
+    * with long site indices, so the grid is not limited to n^2 < 2^31 sites
+    * and the GC never has to scan or copy it.
+    *
+    * Per site: a long parent (stored as parent + 1, so the zeroed memory of a new
+    * direct buffer already means "a root of its own" and nothing is initialized),
+    * a byte of union-by-rank rank and 2 bits of BLOCK/OPEN/FULL/EMPTY state,
+    * about 9.25 bytes per site in total.
+    *
+    * The stores are direct ByteBuffers of at most CHUNK_BYTES each; run with
+    * -XX:MaxDirectMemorySize set above 9.25 n^2 bytes.
+    */
+
+    private static final int BLOCK = 0;
+    private static final int OPEN = 1;
+    private static final int FULL = 2;
+    private static final int EMPTY = 3;
+
+    // size of one direct buffer
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+
+    private final int sideLen;
+    private final long siteCount;
+    private LongStore parent;
+    private ByteStore rank;
+    private ByteStore state;
+    private long numOfOpenSites = 0;
+    private boolean percolated = false;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public OffHeapPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        sideLen = n;
+        siteCount = (long) n * n;
+        parent = new LongStore(siteCount);
+        rank = new ByteStore(siteCount);
+        state = new ByteStore((siteCount + 3) >>> 2);
+    }
+
+    private void isIndex(int row, int col) {
+        if (parent == null) {
+            throw new IllegalStateException("The grid is closed");
+        }
+        if (row <= 0 || row > sideLen) {
+            throw new IllegalArgumentException("The row index is out of range");
+        }
+        if (col <= 0 || col > sideLen) {
+            throw new IllegalArgumentException("The col index is out of range");
+        }
+    }
+
+    // get index to connect 2D [n][n]array with 1D [n*n]array
+    private long getIndex(int row, int col) {
+        return (long) sideLen * (row - 1) + col - 1;
+    }
+
+    private int stateOf(long idx) {
+        return (state.get(idx >>> 2) >>> ((idx & 3) << 1)) & 3;
+    }
+
+    private void setState(long idx, int value) {
+        long at = idx >>> 2;
+        int shift = (int) (idx & 3) << 1;
+        state.set(at, (byte) ((state.get(at) & ~(3 << shift)) | (value << shift)));
+    }
+
+    private long parentOf(long idx) {
+        long stored = parent.get(idx);
+        return stored == 0 ? idx : stored - 1;
+    }
+
+    // root of idx, with path halving
+    private long find(long idx) {
+        long up = parentOf(idx);
+        while (up != idx) {
+            long grand = parentOf(up);
+            parent.set(idx, grand + 1);
+            idx = grand;
+            up = parentOf(idx);
+        }
+        return idx;
+    }
+
+    // links two distinct roots by rank and returns the new root
+    private long link(long rootA, long rootB) {
+        int rankA = rank.get(rootA);
+        int rankB = rank.get(rootB);
+        if (rankA < rankB) {
+            parent.set(rootA, rootB + 1);
+            return rootB;
+        }
+        parent.set(rootB, rootA + 1);
+        if (rankA == rankB) {
+            rank.set(rootA, (byte) (rankA + 1));
+        }
+        return rootA;
+    }
+
+    // state of the component formed by joining components in states a and b
+    private int merge(int a, int b) {
+        if (a == FULL || b == FULL) {
+            if (a == EMPTY || b == EMPTY) {
+                percolated = true;
+            }
+            return FULL;
+        }
+        if (a == EMPTY || b == EMPTY) {
+            return EMPTY;
+        }
+        return OPEN;
+    }
+
+    // joins the open site idx with the site nb if nb is open
+    private void join(long idx, long nb) {
+        if (stateOf(nb) == BLOCK) {
+            return;
+        }
+        long rootA = find(idx);
+        long rootB = find(nb);
+        if (rootA == rootB) {
+            return;
+        }
+        int joined = merge(stateOf(rootA), stateOf(rootB));
+        setState(link(rootA, rootB), joined);
+    }
+
+    // opens the site (row, col) if it is not open already
+    public void open(int row, int col) {
+        isIndex(row, col);
+        long idx = getIndex(row, col);
+        if (stateOf(idx) != BLOCK) {
+            return;
+        }
+        numOfOpenSites += 1;
+
+        int own = OPEN;
+        if (row == 1) {
+            own = FULL;
+        }
+        if (row == sideLen) {
+            own = merge(own, EMPTY);
+        }
+        setState(idx, own);
+
+        if (row > 1) {
+            join(idx, idx - sideLen);
+        }
+        if (row < sideLen) {
+            join(idx, idx + sideLen);
+        }
+        if (col > 1) {
+            join(idx, idx - 1);
+        }
+        if (col < sideLen) {
+            join(idx, idx + 1);
+        }
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        isIndex(row, col);
+        return stateOf(getIndex(row, col)) != BLOCK;
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        isIndex(row, col);
+        long idx = getIndex(row, col);
+        return stateOf(idx) != BLOCK && stateOf(find(idx)) == FULL;
+    }
+
+    // returns the number of open sites
+    public long numberOfOpenSites() {
+        return numOfOpenSites;
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolated;
+    }
+
+    // drops the direct buffers; their memory is returned once they are collected
+    @Override
+    public void close() {
+        parent = null;
+        rank = null;
+        state = null;
+    }
+
+    // long array of a given length over direct buffers, zero-filled
+    private static final class LongStore {
+
+        private static final int SHIFT = CHUNK_SHIFT - 3;
+        private static final long MASK = (1L << SHIFT) - 1;
+
+        private final LongBuffer[] chunks;
+
+        LongStore(long length) {
+            chunks = new LongBuffer[(int) ((length + MASK) >>> SHIFT)];
+            for (int i = 0; i < chunks.length; ++i) {
+                long longs = Math.min(MASK + 1, length - ((long) i << SHIFT));
+                chunks[i] = ByteBuffer.allocateDirect((int) (longs << 3))
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+
+        long get(long i) {
+            return chunks[(int) (i >>> SHIFT)].get((int) (i & MASK));
+        }
+
+        void set(long i, long value) {
+            chunks[(int) (i >>> SHIFT)].put((int) (i & MASK), value);
+        }
+    }
+
+    // byte array of a given length over direct buffers, zero-filled
+    private static final class ByteStore {
+
+        private static final long MASK = CHUNK_BYTES - 1;
+
+        private final ByteBuffer[] chunks;
+
+        ByteStore(long length) {
+            chunks = new ByteBuffer[(int) ((length + MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; ++i) {
+                long bytes = Math.min(CHUNK_BYTES, length - ((long) i << CHUNK_SHIFT));
+                chunks[i] = ByteBuffer.allocateDirect((int) bytes);
+            }
+        }
+
+        byte get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & MASK));
+        }
+
+        void set(long i, byte value) {
+            chunks[(int) (i >>> CHUNK_SHIFT)].put((int) (i & MASK), value);
+        }
+    }
+
+    // test
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        try (OffHeapPercolation test = new OffHeapPercolation(n)) {
+            for (int row = 1; row <= n; ++row) {
+                test.open(row, 1);
+            }
+            System.out.println(test.isFull(n, 1) + " " + test.percolates());
+            System.out.println(test.numberOfOpenSites());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ *  Compilation:  javac OpenBenchmark.java
+ *  Execution:    java -Xmx4g OpenBenchmark [n ...]
+ *  Dependencies: Percolation.java
+ *
+ *  Microbenchmark of Percolation.open(): for each grid size n (default
+ *  100, 1000 and 10000) opens 60% of the sites, a little above the
+ *  percolation threshold, in a fixed random order and prints the best
+ *  rate in opens per second. The order and the grid are created before
+ *  timing, so only the open() calls are measured.
+ *
+ ******************************************************************************/
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class OpenBenchmark {
+
+    // fraction of the sites opened per run
+    private static final double FILL = 0.6;
+
+    // measured time per grid size in nanoseconds (at least one run)
+    private static final long BUDGET = 2_000_000_000L;
+
+    // random order of the first FILL * n^2 sites, packed as (row - 1) * n + (col - 1)
+    private static int[] openOrder(int n, long seed) {
+        int total = n * n;
+        int count = (int) (FILL * total);
+        int[] sites = new int[total];
+        for (int i = 0; i < total; ++i) {
+            sites[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < count; ++i) {
+            int j = i + random.nextInt(total - i);
+            int swap = sites[i];
+            sites[i] = sites[j];
+            sites[j] = swap;
+        }
+        return Arrays.copyOf(sites, count);
+    }
+
+    // nanoseconds spent opening every site of order on a fresh grid
+    private static long run(int n, int[] order) {
+        Percolation grid = new Percolation(n);
+        long start = System.nanoTime();
+        for (int site : order) {
+            grid.open(site / n + 1, site % n + 1);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (grid.numberOfOpenSites() != order.length) {
+            throw new IllegalStateException("Unexpected number of open sites");
+        }
+        return elapsed;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = {100, 1000, 10000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        // warm up the JIT on a small grid
+        int[] warmup = openOrder(200, 1);
+        for (int i = 0; i < 200; ++i) {
+            run(200, warmup);
+        }
+
+        for (int n : sizes) {
+            int[] order = openOrder(n, n);
+            long best = Long.MAX_VALUE;
+            long spent = 0;
+            int runs = 0;
+            do {
+                long elapsed = run(n, order);
+                best = Math.min(best, elapsed);
+                spent += elapsed;
+                ++runs;
+            } while (spent < BUDGET);
+            double opensPerSec = order.length * 1e9 / best;
+            System.out.printf("n = %6d   %,15.0f opens/s   (best of %d)%n", n, opensPerSec, runs);
+        }
+    }
+}
@@ -1,4 +1,10 @@
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntFunction;
 
 public class Percolation {
 
@@ -27,30 +33,151 @@ public class Percolation {
     * Hope that helps.
     */
 
+    // first int of a snapshot file: "PSNP", followed by the format version
+    private static final int SNAPSHOT_MAGIC = 0x50534E50;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    // largest n whose padded (n + 2) x (n + 2) grid has int indices
+    static final int MAX_SIDE = 46338;
+
+    // sites read from a SiteReader at a time by build()
+    private static final int BUILD_BATCH = 1 << 16;
+
     private final int sideLen;
-    private final WeightedQuickUnionUF percGrid;
-    private final WeightedQuickUnionUF connectGrid;
-    private final boolean[][] stateGrid;
+    // row length of the padded grid: sites are columns 1..n, columns 0 and n + 1 are the sentinel border
+    private final int stride;
+    private final UnionFind percGrid;
+    // open state of the padded (n + 2) x (n + 2) grid: bit getIndex(row, col) is set if the site is open
+    private final long[] stateGrid;
+    // full sites, same layout; the top border row counts as full, the bottom one never does
+    private final long[] fullGrid;
+    // explicit stack of the flood fill in markFull(), grown on demand
+    private int[] fillStack;
+    // bitmap of the sites added by the running openAll(), same layout, all zero between calls
+    private long[] batchBits;
     private int numOfOpenSites = 0;
+    private int numOfFullSites = 0;
+    // where state changes are published, null if nobody listens
+    private PercolationEventStream events;
+    // state as of the last open() or openAll() that published events, for the subscriber threads:
+    // publishedOpen is written last, so a thread that reads it also sees every site bit set before
+    private volatile boolean percolatedPublished = false;
+    private volatile int publishedOpen = 0;
     private final int upVNode = 0;
     private final int botVNode;
 
     // creates n-by-n grid, with all sites initially blocked
     public Percolation(int n) {
+        this(n, GridUnionFind::new);
+    }
+
+    // creates n-by-n grid backed by the given union-find implementation
+    Percolation(int n, IntFunction<UnionFind> unionFind) {
         if (n <= 0) {
             throw new IllegalArgumentException("The argument is <= 0");
         }
+        if ((long) (n + 2) * (n + 2) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The grid is too large: the padded grid needs (n + 2)^2 <= "
+                    + Integer.MAX_VALUE + " sites, so n <= " + MAX_SIDE);
+        }
         sideLen = n;
-        stateGrid = new boolean[n][n];
+        stride = n + 2;
+        stateGrid = new long[(stride * stride + 63) >>> 6];
+        fullGrid = new long[stateGrid.length];
+        percGrid = unionFind.apply(stride * stride);
+        botVNode = getIndex(sideLen + 1, 0);
+        openBorders();
+    }
 
-        for (int i = 0; i < sideLen; ++i) {
-            for (int j = 0; j < sideLen; ++j) {
-                stateGrid[i][j] = false;
-            }
+    // the border rows above and below the grid are always open:
+    // in percGrid the top one is the virtual top node and the bottom one the virtual bottom node;
+    // the top one is also full, so a site opened in row 1 becomes full through it,
+    // while fullness never spreads through the bottom one (no backwash)
+    private void openBorders() {
+        for (int col = 1; col <= sideLen; ++col) {
+            setBit(stateGrid, getIndex(0, col));
+            setBit(stateGrid, getIndex(sideLen + 1, col));
+            setBit(fullGrid, getIndex(0, col));
+            percGrid.union(upVNode, getIndex(0, col));
+            percGrid.union(botVNode, getIndex(sideLen + 1, col));
         }
-        connectGrid = new WeightedQuickUnionUF(sideLen * sideLen + 1);
-        percGrid = new WeightedQuickUnionUF(sideLen * sideLen + 2);
-        botVNode = sideLen * sideLen + 1;
+    }
+
+    // grid restored from a snapshot
+    private Percolation(int n, long[] stateGrid, long[] fullGrid, UnionFind percGrid,
+                        int numOfOpenSites, int numOfFullSites) {
+        sideLen = n;
+        stride = n + 2;
+        this.stateGrid = stateGrid;
+        this.fullGrid = fullGrid;
+        this.percGrid = percGrid;
+        this.numOfOpenSites = numOfOpenSites;
+        this.numOfFullSites = numOfFullSites;
+        botVNode = getIndex(sideLen + 1, 0);
+    }
+
+    // blocks every site again, reusing all the arrays of the grid,
+    // so one grid can serve many trials without allocating
+    public void reset() {
+        Arrays.fill(stateGrid, 0L);
+        Arrays.fill(fullGrid, 0L);
+        percGrid.reset();
+        numOfOpenSites = 0;
+        numOfFullSites = 0;
+        percolatedPublished = false;
+        publishedOpen = 0;
+        openBorders();
+    }
+
+    // publishes the sites opened and becoming full, and the moment the system percolates,
+    // to stream from now on; null stops publishing
+    public void publishTo(PercolationEventStream stream) {
+        events = stream;
+    }
+
+    private void publish(int type, int idx) {
+        events.publish(type, idx / stride, idx % stride);
+    }
+
+    // publishes PERCOLATED the first time the system percolates, then the open count
+    private void publishState() {
+        if (!percolatedPublished && percolates()) {
+            percolatedPublished = true;
+            events.publish(PercolationEventStream.PERCOLATED, 0, 0);
+        }
+        publishedOpen = numOfOpenSites;
+    }
+
+    // number of open sites as of the last published change; unlike the other queries
+    // this one and the two below may be called from a subscriber thread while the grid changes
+    public int publishedOpenSites() {
+        return publishedOpen;
+    }
+
+    // did the system percolate as of the last published change?
+    public boolean publishedPercolates() {
+        return percolatedPublished;
+    }
+
+    // open sites of the row as of the last published change (or later), laid out like openRow()
+    public long[] publishedOpenRow(int row) {
+        return publishedRow(stateGrid, row);
+    }
+
+    // full sites of the row as of the last published change (or later), laid out like openRow()
+    public long[] publishedFullRow(int row) {
+        return publishedRow(fullGrid, row);
+    }
+
+    private long[] publishedRow(long[] bits, int row) {
+        isRow(row);
+        // the volatile read of the count is the acquire: the site bits set before the last
+        // publishState() are visible after it; nothing published yet means no site to show,
+        // as publishedOpenSites() says
+        if (publishedOpen == 0) {
+            return new long[(sideLen + 63) >>> 6];
+        }
+        return extractBits(bits, getIndex(row, 1), sideLen);
     }
 
     private void isIndex(int row, int col) {
@@ -62,184 +189,413 @@ public class Percolation {
         }
     }
 
-    // get index to connect 2D [n][n]array with 1D [n*n]array
+    // get index of (row, col) in the flat padded grid, row and col in [0, n + 1]
     private int getIndex(int row, int col) {
-        return sideLen * (row - 1) + col;
+        return stride * row + col;
     }
 
     // opens the site (row, col) if it is not open already
     public void open(int row, int col) {
         isIndex(row, col);
+        openSite(getIndex(row, col));
+        if (events != null) {
+            publishState();
+        }
+    }
 
-        if (stateGrid[row - 1][col - 1]) {
+    // opens the site at padded index idx; the border makes every site have four neighbours
+    private void openSite(int idx) {
+        if (isSet(stateGrid, idx)) {
             return;
         }
-
-        stateGrid[row - 1][col - 1] = true;
+        setBit(stateGrid, idx);
         numOfOpenSites += 1;
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.OPENS.increment();
+        }
+        if (events != null) {
+            publish(PercolationEventStream.OPENED, idx);
+        }
 
-        if (sideLen > 1) {
-            if (row - 1 > 0) {
-                if (row - 1 < sideLen - 1) {
-                    if (col - 1 > 0) {
-                        if (col - 1 < sideLen - 1) {
-                            // inside
-                            if (isOpen(row + 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                            }
-                            if (isOpen(row - 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            }
-                            if (isOpen(row, col - 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            }
-                            if (isOpen(row, col + 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                            }
-                        } else {
-                            // [1..n-2][n-1]
-                            if (isOpen(row + 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                            }
-                            if (isOpen(row - 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            }
-                            if (isOpen(row, col - 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            }
-                        }
-                    } else {
-                        //[1..n-2][0]
-                        if (isOpen(row + 1, col)) {
-                            percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                            connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                        }
-                        if (isOpen(row - 1, col)) {
-                            percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                        }
-                        if (isOpen(row, col + 1)) {
-                            percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                            connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                        }
-                    }
+        join(idx, idx - stride);
+        join(idx, idx + stride);
+        join(idx, idx - 1);
+        join(idx, idx + 1);
+        if (touchesFull(idx)) {
+            markFull(idx);
+        }
+    }
+
+    // is one of the four neighbours of idx full?
+    private boolean touchesFull(int idx) {
+        return isSet(fullGrid, idx - stride) || isSet(fullGrid, idx + stride)
+                || isSet(fullGrid, idx - 1) || isSet(fullGrid, idx + 1);
+    }
+
+    // marks full the open site idx and every open site connected to it that is not full yet;
+    // a site is marked once over the whole life of the grid, so all the fills of a run cost O(n^2)
+    private void markFull(int idx) {
+        if (fillStack == null) {
+            fillStack = new int[64];
+        }
+        int[] stack = fillStack;
+        int top = 0;
+        setBit(fullGrid, idx);
+        numOfFullSites += 1;
+        if (events != null) {
+            publish(PercolationEventStream.FULL, idx);
+        }
+        stack[top++] = idx;
+        while (top > 0) {
+            int site = stack[--top];
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                fillStack = stack;
+            }
+            top = fillFrom(site - stride, stack, top);
+            top = fillFrom(site + stride, stack, top);
+            top = fillFrom(site - 1, stack, top);
+            top = fillFrom(site + 1, stack, top);
+        }
+    }
+
+    // marks and pushes nb if it is an open site of the grid that is not full yet;
+    // the bottom border is open but stays out of the fill
+    private int fillFrom(int nb, int[] stack, int top) {
+        if (nb < botVNode && isSet(stateGrid, nb) && !isSet(fullGrid, nb)) {
+            setBit(fullGrid, nb);
+            numOfFullSites += 1;
+            if (events != null) {
+                publish(PercolationEventStream.FULL, nb);
+            }
+            stack[top++] = nb;
+        }
+        return top;
+    }
+
+    // opens every site of a batch of (row, col) pairs: {row1, col1, row2, col2, ...};
+    // the whole batch is validated first, then applied in row-major order without duplicates
+    public void openAll(int[] sites) {
+        if (sites == null) {
+            throw new IllegalArgumentException("The batch is null");
+        }
+        openAll(sites, sites.length);
+    }
+
+    // same as above for the first length ints of sites
+    public void openAll(int[] sites, int length) {
+        isBatch(sites, length);
+
+        // mark the new sites open and remember them in a row-major bitmap,
+        // which also drops duplicates and sites that were already open
+        if (batchBits == null) {
+            batchBits = new long[stateGrid.length];
+        }
+        long[] added = batchBits;
+        int first = added.length;
+        int last = -1;
+        for (int i = 0; i < length; i += 2) {
+            int idx = getIndex(sites[i], sites[i + 1]);
+            if (!isSet(stateGrid, idx)) {
+                setBit(stateGrid, idx);
+                setBit(added, idx);
+                numOfOpenSites += 1;
+                if (PercolationMetrics.ENABLED) {
+                    PercolationMetrics.OPENS.increment();
                 }
-                else {
-                    // [i][n-1]
-                    percGrid.union(getIndex(row, col), botVNode);
-                    if (col - 1 > 0) {
-                        // [1..n-2][n-1]
-                        if (col - 1 < sideLen - 1) {
-                            if (isOpen(row, col - 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            }
-                            if (isOpen(row, col + 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                            }
-                            if (isOpen(row - 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            }
-                        }
-                        else {
-                            // [n-1][n-1]
-                            if (isOpen(row, col - 1)) {
-                                percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                                connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            }
-                            if (isOpen(row - 1, col)) {
-                                percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                                connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            }
-                        }
-                    }
-                    else {
-                        // [n-1][0]
-                        if (isOpen(row - 1, col)) {
-                            percGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                            connectGrid.union(getIndex(row, col), getIndex(row - 1, col));
-                        }
-                        if (isOpen(row, col + 1)) {
-                            percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                            connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                        }
-                    }
+                if (events != null) {
+                    publish(PercolationEventStream.OPENED, idx);
+                }
+                first = Math.min(first, idx >>> 6);
+                last = Math.max(last, idx >>> 6);
+            }
+        }
+
+        // one union per edge: every new site joins its upper and left open neighbours,
+        // and its lower and right ones only if they were open before the batch
+        // (new ones there join it from their own side); the bitmap is scanned in order,
+        // so the union-find arrays are walked sequentially; a word is cleared once its sites are done,
+        // since later sites only look at their own and following words.
+        // A new site next to a full one starts a fill over all the sites open by now: a component
+        // that became full must have such a site, as its old sites were not connected to full ones
+        for (int w = first; w <= last; ++w) {
+            for (long word = added[w]; word != 0; word &= word - 1) {
+                int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                join(idx, idx - stride);
+                join(idx, idx - 1);
+                if (!isSet(added, idx + stride)) {
+                    join(idx, idx + stride);
+                }
+                if (!isSet(added, idx + 1)) {
+                    join(idx, idx + 1);
                 }
+                if (!isSet(fullGrid, idx) && touchesFull(idx)) {
+                    markFull(idx);
+                }
+            }
+            added[w] = 0;
+        }
+        if (events != null) {
+            publishState();
+        }
+    }
+
+    private void isBatch(int[] sites, int length) {
+        if (sites == null) {
+            throw new IllegalArgumentException("The batch is null");
+        }
+        if (length < 0 || length > sites.length) {
+            throw new IllegalArgumentException("The batch length is out of range");
+        }
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("The batch has an odd number of coordinates");
+        }
+        for (int i = 0; i < length; i += 2) {
+            isIndex(sites[i], sites[i + 1]);
+        }
+    }
+
+    // n-by-n grid with the sites of a batch open, as openAll(sites, length) on a new grid would leave it,
+    // connected by threads threads (see connectInParallel)
+    public static Percolation build(int n, int[] sites, int length, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads is <= 0");
+        }
+        Percolation grid = new Percolation(n);
+        grid.isBatch(sites, length);
+        grid.markOpen(sites, length);
+        grid.connectInParallel(threads);
+        return grid;
+    }
+
+    // grid with every remaining site of in open; the file is read on this thread,
+    // the grid is connected by threads threads
+    public static Percolation build(SiteReader in, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads is <= 0");
+        }
+        Percolation grid = new Percolation(in.size());
+        int[] pairs = new int[2 * BUILD_BATCH];
+        for (int count = in.read(pairs); count > 0; count = in.read(pairs)) {
+            grid.isBatch(pairs, count);
+            grid.markOpen(pairs, count);
+        }
+        grid.connectInParallel(threads);
+        return grid;
+    }
+
+    // sets the open bits of a validated batch, nothing else
+    private void markOpen(int[] sites, int length) {
+        int before = numOfOpenSites;
+        for (int i = 0; i < length; i += 2) {
+            int idx = getIndex(sites[i], sites[i + 1]);
+            if (!isSet(stateGrid, idx)) {
+                setBit(stateGrid, idx);
+                numOfOpenSites += 1;
             }
-            else {
-                // [0][i]
-                percGrid.union(upVNode, getIndex(row, col));
-                connectGrid.union(upVNode, getIndex(row, col));
-
-                if (col - 1 > 0) {
-                    // [0][0..n-1]
-                    if (col - 1 < sideLen - 1) {
-                        // [0][1..n-2]
-                        if (isOpen(row, col - 1)) {
-                            percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                        }
-                        if (isOpen(row, col + 1)) {
-                            percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                            connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                        }
-                        if (isOpen(row + 1, col)) {
-                            percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                            connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                        }
+        }
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.OPENS.add(numOfOpenSites - before);
+        }
+    }
+
+    // builds the union-find and the full sites of a new grid whose sites were only marked open:
+    //  1. the rows are cut into one stripe per thread, and each thread joins the open sites
+    //     of its stripe with their upper and left neighbours inside the stripe; the stripes
+    //     touch disjoint parts of the union-find arrays, so they need no locking;
+    //  2. the first row of each stripe is joined with the last row of the one above;
+    //  3. the components touching row 1 are full: their roots are collected, then the threads
+    //     mark full every open site with such a root, each over its own range of bitset words;
+    //     they look the roots up with root(), which only reads the finished forest;
+    //  4. rows 1 and n are joined with the border rows, as open() would have done.
+    // The result is the grid the sequential path gives: same open and full sites, same components.
+    private void connectInParallel(int threads) {
+        try (Workers workers = new Workers(threads)) {
+            connectInParallel(workers);
+        }
+    }
+
+    private void connectInParallel(Workers workers) {
+        int stripes = Math.min(workers.threads(), sideLen);
+        int firstSite = getIndex(1, 0);
+
+        // 1. one stripe of rows per task
+        workers.run(stripes, s -> {
+            int lo = getIndex(1 + (int) ((long) sideLen * s / stripes), 0);
+            int hi = getIndex(1 + (int) ((long) sideLen * (s + 1) / stripes), 0);
+            for (int w = lo >>> 6; w <= (hi - 1) >>> 6; ++w) {
+                for (long word = stateGrid[w]; word != 0; word &= word - 1) {
+                    int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (idx < lo || idx >= hi) {
+                        continue;
                     }
-                    else {
-                        // element [0][n-1]
-                        if (isOpen(row, col - 1)) {
-                            percGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                            connectGrid.union(getIndex(row, col), getIndex(row, col - 1));
-                        }
-                        if (isOpen(row + 1, col)) {
-                            percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                            connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                        }
+                    if (idx - stride >= lo) {
+                        join(idx, idx - stride);
                     }
+                    join(idx, idx - 1);
                 }
-                else {
-                    // element [0][0]
-                    if (isOpen(row, col + 1)) {
-                        percGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                        connectGrid.union(getIndex(row, col), getIndex(row, col + 1));
-                    }
-                    if (isOpen(row + 1, col)) {
-                        percGrid.union(getIndex(row, col), getIndex(row + 1, col));
-                        connectGrid.union(getIndex(row, col), getIndex(row + 1, col));
+            }
+        });
+
+        // 2. stripe boundaries
+        for (int s = 1; s < stripes; ++s) {
+            int lo = getIndex(1 + (int) ((long) sideLen * s / stripes), 0);
+            for (int idx = lo + 1; idx <= lo + sideLen; ++idx) {
+                if (isSet(stateGrid, idx)) {
+                    join(idx, idx - stride);
+                }
+            }
+        }
+
+        // 3. roots of the components touching row 1, in the otherwise unused batch bitmap
+        if (batchBits == null) {
+            batchBits = new long[stateGrid.length];
+        }
+        long[] topRoots = batchBits;
+        for (int idx = firstSite + 1; idx <= firstSite + sideLen; ++idx) {
+            if (isSet(stateGrid, idx)) {
+                setBit(topRoots, percGrid.find(idx));
+            }
+        }
+        int firstWord = firstSite >>> 6;
+        int words = ((botVNode - 1) >>> 6) - firstWord + 1;
+        int tasks = Math.min(workers.threads(), words);
+        int[] full = new int[tasks];
+        workers.run(tasks, t -> {
+            int count = 0;
+            int toWord = firstWord + (int) ((long) words * (t + 1) / tasks);
+            for (int w = firstWord + (int) ((long) words * t / tasks); w < toWord; ++w) {
+                long marks = 0;
+                for (long word = stateGrid[w]; word != 0; word &= word - 1) {
+                    int idx = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (idx >= firstSite && idx < botVNode && isSet(topRoots, percGrid.root(idx))) {
+                        marks |= 1L << idx;
+                        ++count;
                     }
                 }
+                fullGrid[w] |= marks;
             }
-        } else {
-            // sideLen == 1
-            percGrid.union(upVNode, getIndex(1, 1));
-            percGrid.union(getIndex(1, 1), 2);
-            connectGrid.union(upVNode, getIndex(1, 1));
+            full[t] = count;
+        });
+        for (int count : full) {
+            numOfFullSites += count;
+        }
+        Arrays.fill(topRoots, 0L);
+
+        // 4. the border rows
+        for (int col = 1; col <= sideLen; ++col) {
+            if (isSet(stateGrid, getIndex(1, col))) {
+                join(getIndex(1, col), getIndex(0, col));
+            }
+            if (isSet(stateGrid, getIndex(sideLen, col))) {
+                join(getIndex(sideLen, col), getIndex(sideLen + 1, col));
+            }
+        }
+    }
+
+    private static boolean isSet(long[] bits, int idx) {
+        return (bits[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    private static void setBit(long[] bits, int idx) {
+        bits[idx >>> 6] |= 1L << idx;
+    }
+
+    // number of set bits in [from, from + count), count > 0
+    private static int countBits(long[] bits, int from, int count) {
+        int end = from + count;
+        int first = from >>> 6;
+        int last = (end - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -end;
+        if (first == last) {
+            return Long.bitCount(bits[first] & firstMask & lastMask);
+        }
+        int total = Long.bitCount(bits[first] & firstMask);
+        for (int w = first + 1; w < last; ++w) {
+            total += Long.bitCount(bits[w]);
+        }
+        return total + Long.bitCount(bits[last] & lastMask);
+    }
+
+    // bits [from, from + count) of bits, moved down to start at bit 0 of the result
+    private static long[] extractBits(long[] bits, int from, int count) {
+        long[] out = new long[(count + 63) >>> 6];
+        int shift = from & 63;
+        int w = from >>> 6;
+        for (int i = 0; i < out.length; ++i, ++w) {
+            long word = bits[w] >>> shift;
+            if (shift != 0 && w + 1 < bits.length) {
+                word |= bits[w + 1] << -shift;
+            }
+            out[i] = word;
+        }
+        if ((count & 63) != 0) {
+            out[out.length - 1] &= -1L >>> -count;
+        }
+        return out;
+    }
+
+    // joins the open site idx with its neighbour nb if nb is open
+    private void join(int idx, int nb) {
+        if (isSet(stateGrid, nb)) {
+            percGrid.union(idx, nb);
         }
     }
 
     // is the site (row, col) open?
     public boolean isOpen(int row, int col) {
         isIndex(row, col);
-        return stateGrid[row - 1][col - 1];
+        return isSet(stateGrid, getIndex(row, col));
     }
 
     // is the site (row, col) full?
     public boolean isFull(int row, int col) {
         isIndex(row, col);
-        return stateGrid[row - 1][col - 1] && connectGrid.connected(upVNode, getIndex(row, col));
+        return isSet(fullGrid, getIndex(row, col));
+    }
+
+    private void isRow(int row) {
+        if (row <= 0 || row > sideLen) {
+            throw new IllegalArgumentException("The row index is out of range");
+        }
+    }
+
+    // returns the number of open sites in the row
+    public int openSitesInRow(int row) {
+        isRow(row);
+        return countBits(stateGrid, getIndex(row, 1), sideLen);
+    }
+
+    // returns the number of open sites in the rectangle [row1, row2] x [col1, col2]
+    public int openSitesIn(int row1, int col1, int row2, int col2) {
+        isIndex(row1, col1);
+        isIndex(row2, col2);
+        if (row1 > row2 || col1 > col2) {
+            throw new IllegalArgumentException("The rectangle is empty");
+        }
+        int total = 0;
+        for (int row = row1; row <= row2; ++row) {
+            total += countBits(stateGrid, getIndex(row, col1), col2 - col1 + 1);
+        }
+        return total;
+    }
+
+    // open sites of the row as a bitmap: bit (col - 1) % 64 of word (col - 1) / 64 is set if (row, col) is open
+    public long[] openRow(int row) {
+        isRow(row);
+        return extractBits(stateGrid, getIndex(row, 1), sideLen);
+    }
+
+    // full sites of the row, as a bitmap laid out like openRow()
+    public long[] fullRow(int row) {
+        isRow(row);
+        return extractBits(fullGrid, getIndex(row, 1), sideLen);
+    }
 
+    // side length n of the grid
+    int size() {
+        return sideLen;
     }
 
     // returns the number of open sites
@@ -247,11 +603,98 @@ public class Percolation {
         return numOfOpenSites;
     }
 
+    // returns the number of full sites
+    public int numberOfFullSites() {
+        return numOfFullSites;
+    }
+
     // does the system percolate?
     public boolean percolates() {
+        if (PercolationMetrics.ENABLED) {
+            PercolationMetrics.CONNECTED.increment();
+        }
         return percGrid.connected(upVNode, botVNode);
     }
 
+    // writes a snapshot of the grid to file (open and full sites, the union-find and the counts),
+    // replacing it atomically: an existing snapshot survives a failed save
+    public void save(String file) {
+        isSavable();
+        try {
+            BinaryChannel.writeAtomically(Paths.get(file), this::writeTo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    // reads a grid from a snapshot written by save()
+    public static Percolation load(String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return readFrom(new BinaryChannel(channel, true));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+    }
+
+    // snapshot body: magic, version, n, open count, full count, open bitset, full bitset, percGrid;
+    // version 1 had a second union-find for fullness instead of the full count and bitset
+    void writeTo(BinaryChannel out) throws IOException {
+        isSavable();
+        out.putInt(SNAPSHOT_MAGIC);
+        out.putInt(SNAPSHOT_VERSION);
+        out.putInt(sideLen);
+        out.putInt(numOfOpenSites);
+        out.putInt(numOfFullSites);
+        out.putLongs(stateGrid);
+        out.putLongs(fullGrid);
+        ((GridUnionFind) percGrid).writeTo(out);
+    }
+
+    private void isSavable() {
+        if (!(percGrid instanceof GridUnionFind)) {
+            throw new IllegalStateException("Only grids backed by GridUnionFind can be saved");
+        }
+    }
+
+    static Percolation readFrom(BinaryChannel in) throws IOException {
+        if (in.getInt() != SNAPSHOT_MAGIC) {
+            throw new IllegalArgumentException("Not a percolation snapshot");
+        }
+        int version = in.getInt();
+        if (version != 1 && version != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+        int n = in.getInt();
+        int open = in.getInt();
+        int fullCount = version == 1 ? 0 : in.getInt();
+        // checked before anything is allocated: n sizes every array, as in the constructor
+        if (n <= 0 || n > MAX_SIDE || open < 0 || open > n * n || fullCount < 0 || fullCount > n * n) {
+            throw new IllegalArgumentException("Corrupt snapshot header");
+        }
+        int stride = n + 2;
+        int sites = stride * stride;
+        long[] state = new long[(sites + 63) >>> 6];
+        long[] full = new long[state.length];
+        in.getLongs(state);
+        if (version == 1) {
+            // full sites are the open ones connected to the top border in the old second union-find
+            GridUnionFind connect = GridUnionFind.readFrom(in, sites);
+            for (int col = 1; col <= n; ++col) {
+                setBit(full, col);
+            }
+            for (int idx = stride; idx < sites - stride; ++idx) {
+                if (isSet(state, idx) && connect.connected(0, idx)) {
+                    setBit(full, idx);
+                    ++fullCount;
+                }
+            }
+        } else {
+            in.getLongs(full);
+        }
+        GridUnionFind perc = GridUnionFind.readFrom(in, sites);
+        return new Percolation(n, state, full, perc, open, fullCount);
+    }
+
     // test
     public static void main(String[] args) {
         Percolation test = new Percolation(10);
@@ -0,0 +1,67 @@
+/******************************************************************************
+ *  Compilation:  javac PercolationBuildCheck.java
+ *  Execution:    java PercolationBuildCheck [trials [seed]]
+ *  Dependencies: Percolation.java GridCheck.java
+ *
+ *  Checks Percolation.build() against Percolation.openAll(). Each trial
+ *  draws a random grid size, a random batch of sites and a random number
+ *  of threads from 1 to 8, builds one grid with build() and one with
+ *  openAll() on a new grid, and compares them on every site, the open and
+ *  full counts and percolates(). Then it opens the same n more sites on
+ *  both with open() and compares again, since a built grid must keep
+ *  working like any other.
+ *
+ *  Prints "ok" or stops with an AssertionError naming the first mismatch.
+ *  Run by the test phase of the core module.
+ *
+ ******************************************************************************/
+
+import java.util.SplittableRandom;
+
+public class PercolationBuildCheck {
+
+    private PercolationBuildCheck() {
+    }
+
+    private static void check(String where, SplittableRandom random) {
+        int n = GridCheck.side(random, 40, 300);
+        int[] sites = GridCheck.sites(random, n, 0.3, 0.8);
+        int threads = 1 + random.nextInt(8);
+        where += " (n = " + n + ", " + threads + " threads): ";
+
+        Percolation expected = new Percolation(n);
+        expected.openAll(sites);
+        Percolation built = Percolation.build(n, sites, sites.length, threads);
+        compare(where, expected, built, n);
+
+        for (int i = 0; i < n; ++i) {
+            int row = 1 + random.nextInt(n);
+            int col = 1 + random.nextInt(n);
+            expected.open(row, col);
+            built.open(row, col);
+        }
+        compare(where, expected, built, n);
+    }
+
+    private static void compare(String where, Percolation expected, Percolation built, int n) {
+        if (built.numberOfFullSites() != expected.numberOfFullSites()) {
+            throw new AssertionError(where + built.numberOfFullSites() + " full sites, expected "
+                    + expected.numberOfFullSites());
+        }
+        GridCheck.compare(where, expected, n, built.numberOfOpenSites(), built.percolates(),
+                built::isOpen, built::isFull);
+    }
+
+    public static void main(String[] args) {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        if (trials <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int trial = 0; trial < trials; ++trial) {
+            check("seed " + seed + ", trial " + trial, random);
+        }
+        System.out.println("ok");
+    }
+}
@@ -0,0 +1,256 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Publishes the state changes of a Percolation to subscribers running on their own threads.
+ *
+ * An event is one long: the type in the top 2 bits, then the row and the column
+ * (see type(), row(), col()). Each subscriber has its own bounded single-producer
+ * single-consumer ring and a daemon thread that drains it in batches into
+ * Subscriber.onEvents(). The grid thread only writes into the rings: when a ring is full
+ * the event is dropped and counted, and the subscriber is told through onOverflow()
+ * before its next batch, so it can resynchronize (e.g. redraw everything) instead of
+ * slowing the grid down. A ring of 2 n^2 + 1 events never overflows over a whole run,
+ * since every site is opened and becomes full at most once.
+ *
+ * An idle consumer thread parks until the producer unparks it; the producer only pays
+ * for an unpark when the consumer has said it is about to park (the waiting flag).
+ * Subscribers must not call the grid's single-threaded queries: while events are being
+ * published, only its published*() methods may be called from another thread.
+ *
+ * A subscriber that throws is unsubscribed: its thread reports the exception on System.err
+ * and stops, publish() stops filling its ring, failedSubscribers() counts it and close()
+ * rethrows the exception once the other subscribers are done.
+ *
+ * publish() must only be called from one thread, the one mutating the grid.
+ */
+public class PercolationEventStream implements AutoCloseable {
+
+    // event types
+    public static final int OPENED = 0;
+    public static final int FULL = 1;
+    public static final int PERCOLATED = 2;
+
+    // most events handed to a subscriber at once
+    private static final int BATCH = 1024;
+
+    // replaced as a whole on subscribe(), so publish() walks a plain array
+    private volatile Consumer[] consumers = new Consumer[0];
+    private volatile boolean closed = false;
+
+    // receives the events on the thread of its subscription
+    public interface Subscriber {
+
+        // events[0 .. count - 1], in the order they were published; the array is reused
+        void onEvents(long[] events, int count);
+
+        // lost events were dropped because the ring was full: some events after the ones
+        // delivered so far are missing
+        default void onOverflow(long lost) {
+        }
+    }
+
+    // the event of the given type at (row, col)
+    public static long event(int type, int row, int col) {
+        return ((long) type << 62) | ((long) row << 31) | col;
+    }
+
+    public static int type(long event) {
+        return (int) (event >>> 62);
+    }
+
+    public static int row(long event) {
+        return (int) (event >>> 31) & Integer.MAX_VALUE;
+    }
+
+    public static int col(long event) {
+        return (int) event & Integer.MAX_VALUE;
+    }
+
+    // starts a daemon thread delivering the events published from now on to subscriber,
+    // through a ring of at least capacity events
+    public synchronized void subscribe(Subscriber subscriber, int capacity) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("The subscriber is null");
+        }
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("The capacity is out of range");
+        }
+        if (closed) {
+            throw new IllegalStateException("The stream is closed");
+        }
+        Consumer consumer = new Consumer(subscriber, capacity);
+        Consumer[] grown = Arrays.copyOf(consumers, consumers.length + 1);
+        grown[grown.length - 1] = consumer;
+        consumers = grown;
+        consumer.thread.start();
+    }
+
+    // hands event to every subscriber; never blocks
+    public void publish(long event) {
+        for (Consumer consumer : consumers) {
+            consumer.offer(event);
+        }
+    }
+
+    // same as above for the event of the given type at (row, col)
+    public void publish(int type, int row, int col) {
+        publish(event(type, row, col));
+    }
+
+    // events dropped so far for all subscribers together
+    public long lostEvents() {
+        long total = 0;
+        for (Consumer consumer : consumers) {
+            total += consumer.lostTotal.get();
+        }
+        return total;
+    }
+
+    // subscribers unsubscribed because they threw
+    public int failedSubscribers() {
+        int failed = 0;
+        for (Consumer consumer : consumers) {
+            if (consumer.failure != null) {
+                ++failed;
+            }
+        }
+        return failed;
+    }
+
+    // delivers the events already published, then stops the subscriber threads;
+    // throws IllegalStateException if a subscriber failed, with its exception as the cause
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Consumer consumer : consumers) {
+            LockSupport.unpark(consumer.thread);
+        }
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        IllegalStateException failed = null;
+        for (Consumer consumer : consumers) {
+            if (consumer.failure == null) {
+                continue;
+            }
+            if (failed == null) {
+                failed = new IllegalStateException("A subscriber failed", consumer.failure);
+            } else {
+                failed.addSuppressed(consumer.failure);
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    // ring and thread of one subscriber; head and tail count events, the slot is count & mask
+    private final class Consumer implements Runnable {
+
+        private final Subscriber subscriber;
+        private final long[] ring;
+        private final int mask;
+        private final Thread thread;
+        // next slot to write, advanced by the producer only
+        private final AtomicLong tail = new AtomicLong();
+        // next slot to read, advanced by the consumer only
+        private final AtomicLong head = new AtomicLong();
+        // producer's last view of head, so a non-full ring costs no read of the consumer's counter
+        private long cachedHead = 0;
+        // events dropped since the last onOverflow(), and since the start
+        private final AtomicLong lost = new AtomicLong();
+        private final AtomicLong lostTotal = new AtomicLong();
+        // set by the consumer before it parks; the producer unparks it when it sees the flag
+        private volatile boolean waiting = false;
+        // what the subscriber threw, null while it works; no events are offered after it is set
+        private volatile RuntimeException failure;
+
+        Consumer(Subscriber subscriber, int capacity) {
+            this.subscriber = subscriber;
+            int size = Integer.highestOneBit(capacity);
+            if (size < capacity) {
+                size <<= 1;
+            }
+            ring = new long[size];
+            mask = size - 1;
+            thread = new Thread(this, "percolation-events");
+            thread.setDaemon(true);
+        }
+
+        void offer(long event) {
+            if (failure != null) {
+                return;
+            }
+            long t = tail.get();
+            if (t - cachedHead == ring.length) {
+                cachedHead = head.get();
+                if (t - cachedHead == ring.length) {
+                    lost.incrementAndGet();
+                    lostTotal.incrementAndGet();
+                    wake();
+                    return;
+                }
+            }
+            ring[(int) t & mask] = event;
+            // a full volatile write, not lazySet: it must be ordered before the read of waiting
+            // in wake(), or the consumer could park right after missing the new tail
+            tail.set(t + 1);
+            wake();
+        }
+
+        private void wake() {
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                failure = e;
+                System.err.println("Subscriber " + subscriber + " failed and was unsubscribed");
+                e.printStackTrace();
+            }
+        }
+
+        private void drain() {
+            long[] batch = new long[Math.min(BATCH, ring.length)];
+            while (true) {
+                // read closed before draining, so the events published before close() are all seen
+                boolean last = closed;
+                long dropped = lost.getAndSet(0);
+                if (dropped > 0) {
+                    subscriber.onOverflow(dropped);
+                }
+                long h = head.get();
+                int count = (int) Math.min(tail.get() - h, batch.length);
+                if (count > 0) {
+                    for (int i = 0; i < count; ++i) {
+                        batch[i] = ring[(int) (h + i) & mask];
+                    }
+                    head.lazySet(h + count);
+                    subscriber.onEvents(batch, count);
+                } else if (last) {
+                    return;
+                } else {
+                    // announce the park, then look once more: a producer that wrote before
+                    // seeing waiting is seen here, one that writes after it will unpark
+                    waiting = true;
+                    if (tail.get() == h && lost.get() == 0 && !closed) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                }
+            }
+        }
+    }
+}
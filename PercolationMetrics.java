@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Opt-in counters and histograms of the hot paths of Percolation, GridUnionFind
+ * and PercolationStats.
+ *
+ *   -Dpercolation.metrics=true          turns recording on and registers the
+ *                                       percolation:type=Metrics MBean
+ *   -Dpercolation.metrics.dump=SECONDS  also prints dump() to stderr every SECONDS
+ *
+ * Every hook is guarded by the static final ENABLED flag, which the JIT folds
+ * to a constant, so with recording off the hooks are compiled away.
+ */
+public final class PercolationMetrics implements PercolationMetricsMBean {
+
+    static final boolean ENABLED = Boolean.getBoolean("percolation.metrics");
+
+    static final LongAdder OPENS = new LongAdder();
+    // merges of two distinct sets in GridUnionFind, whichever grid asked for them
+    static final LongAdder UNIONS = new LongAdder();
+    static final LongAdder CONNECTED = new LongAdder();
+    static final Histogram FIND_DEPTH = new Histogram();
+    static final Histogram TRIAL_NANOS = new Histogram();
+    static final LongAdder SAMPLED_DRAWS = new LongAdder();
+    static final LongAdder WASTED_DRAWS = new LongAdder();
+
+    private static final PercolationMetrics INSTANCE = new PercolationMetrics();
+
+    static {
+        if (ENABLED) {
+            register();
+            long period = Long.getLong("percolation.metrics.dump", 0);
+            if (period > 0) {
+                ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "percolation-metrics-dump");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                dumper.scheduleAtFixedRate(() -> System.err.println(dump()), period, period, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private PercolationMetrics() {
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, new ObjectName("percolation:type=Metrics"));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics MBean", e);
+        }
+    }
+
+    // is recording on?
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // all metrics as text, one line per metric
+    public static String dump() {
+        return "percolation metrics"
+                + "\n  opens           " + OPENS.sum()
+                + "\n  unions          " + UNIONS.sum()
+                + "\n  connected()     " + CONNECTED.sum()
+                + "\n  find depth      " + FIND_DEPTH
+                + "\n  trial nanos     " + TRIAL_NANOS
+                + "\n  sampled draws   " + SAMPLED_DRAWS.sum()
+                + "\n  wasted draws    " + WASTED_DRAWS.sum();
+    }
+
+    // sets every metric back to zero
+    public static void clear() {
+        OPENS.reset();
+        UNIONS.reset();
+        CONNECTED.reset();
+        FIND_DEPTH.reset();
+        TRIAL_NANOS.reset();
+        SAMPLED_DRAWS.reset();
+        WASTED_DRAWS.reset();
+    }
+
+    @Override
+    public long getOpens() {
+        return OPENS.sum();
+    }
+
+    @Override
+    public long getUnions() {
+        return UNIONS.sum();
+    }
+
+    @Override
+    public long getConnectedQueries() {
+        return CONNECTED.sum();
+    }
+
+    @Override
+    public long getFinds() {
+        return FIND_DEPTH.count();
+    }
+
+    @Override
+    public double getFindDepthMean() {
+        return FIND_DEPTH.mean();
+    }
+
+    @Override
+    public long getFindDepthP99() {
+        return FIND_DEPTH.percentile(99);
+    }
+
+    @Override
+    public long getFindDepthMax() {
+        return FIND_DEPTH.max();
+    }
+
+    @Override
+    public long getTrials() {
+        return TRIAL_NANOS.count();
+    }
+
+    @Override
+    public long getTrialNanosP50() {
+        return TRIAL_NANOS.percentile(50);
+    }
+
+    @Override
+    public long getTrialNanosP99() {
+        return TRIAL_NANOS.percentile(99);
+    }
+
+    @Override
+    public long getTrialNanosMax() {
+        return TRIAL_NANOS.max();
+    }
+
+    @Override
+    public long getSampledDraws() {
+        return SAMPLED_DRAWS.sum();
+    }
+
+    @Override
+    public long getWastedDraws() {
+        return WASTED_DRAWS.sum();
+    }
+
+    @Override
+    public String getDump() {
+        return dump();
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * JMX view of PercolationMetrics, registered as percolation:type=Metrics.
+ */
+public interface PercolationMetricsMBean {
+
+    long getOpens();
+
+    long getUnions();
+
+    long getConnectedQueries();
+
+    long getFinds();
+
+    double getFindDepthMean();
+
+    long getFindDepthP99();
+
+    long getFindDepthMax();
+
+    long getTrials();
+
+    long getTrialNanosP50();
+
+    long getTrialNanosP99();
+
+    long getTrialNanosMax();
+
+    long getSampledDraws();
+
+    long getWastedDraws();
+
+    String getDump();
+
+    void reset();
+}
@@ -0,0 +1,211 @@
+/******************************************************************************
+ *  Compilation:  javac PercolationRenderer.java
+ *  Dependencies: Percolation.java StdDraw.java
+ *
+ *  Incremental drawing of an n-by-n percolation system, in the colors of
+ *  PercolationVisualizer.draw(). The whole grid is painted once; after that
+ *  only the sites changed by an open() are repainted: the opened site, and
+ *  if it is full, every site that became full with it. Those are found by a
+ *  flood fill from the opened site over open sites not yet painted full, so
+ *  over a whole replay each site is painted full at most once.
+ *
+ *  Works with StdDraw double buffering: nothing is cleared between frames,
+ *  show() copies the off-screen canvas to the screen.
+ *
+ *  The renderer can also be subscribed to a PercolationEventStream: it then
+ *  paints from the events on the stream's thread, a batch per frame, and
+ *  does not read the grid at all unless events were lost; it then redraws
+ *  from the part of the grid that is safe to read from another thread
+ *  (publishedOpenRow(), publishedFullRow() and the published counts).
+ *
+ ******************************************************************************/
+
+import edu.princeton.cs.algs4.StdDraw;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.function.IntFunction;
+
+public class PercolationRenderer implements PercolationEventStream.Subscriber {
+
+    private final Percolation perc;
+    private final int sideLen;
+    // sites already painted full, 0-based row-major
+    private final boolean[] paintedFull;
+    // explicit stack of the flood fill, allocated on first use
+    private int[] stack;
+    // minimum time between two frames in nanoseconds, 0 to show every frame
+    private final long frameNanos;
+    private long lastFrame;
+    // status as seen through the events, -1 while it is read from the grid
+    private int openSeen = -1;
+    private boolean percolatedSeen = false;
+    // were events lost? the status is then read from the grid's published state for good
+    private boolean overflowed = false;
+
+    // renderer of perc, an n-by-n system, showing at most fps frames per second (0 = no limit)
+    public PercolationRenderer(Percolation perc, int n, int fps) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        if (fps < 0) {
+            throw new IllegalArgumentException("The frame rate is < 0");
+        }
+        this.perc = perc;
+        sideLen = n;
+        paintedFull = new boolean[n * n];
+        frameNanos = fps == 0 ? 0 : 1_000_000_000L / fps;
+        lastFrame = System.nanoTime() - frameNanos;
+    }
+
+    // paints the whole grid and the status line
+    public void drawAll() {
+        PercolationVisualizer.draw(perc, sideLen);
+        syncPaintedFull(perc::fullRow);
+    }
+
+    // marks painted full the sites that are set in the full row bitmaps
+    private void syncPaintedFull(IntFunction<long[]> fullRow) {
+        for (int row = 1; row <= sideLen; row++) {
+            long[] full = fullRow.apply(row);
+            for (int col = 1; col <= sideLen; col++) {
+                paintedFull[(row - 1) * sideLen + col - 1] = (full[(col - 1) >>> 6] & (1L << (col - 1))) != 0;
+            }
+        }
+    }
+
+    // repaints what changed after perc.open(row, col)
+    public void siteOpened(int row, int col) {
+        if (paintedFull[(row - 1) * sideLen + col - 1]) {
+            return;
+        }
+        if (perc.isFull(row, col)) {
+            fill(row, col);
+        } else {
+            paint(row, col, StdDraw.WHITE);
+        }
+    }
+
+    private void paint(int row, int col, Color color) {
+        StdDraw.setPenColor(color);
+        StdDraw.filledSquare(col - 0.5, sideLen - row + 0.5, 0.45);
+    }
+
+    // paints full the open sites connected to (row, col) that are not painted full yet
+    private void fill(int row, int col) {
+        if (stack == null) {
+            stack = new int[sideLen * sideLen];
+        }
+        int top = 0;
+        int start = (row - 1) * sideLen + col - 1;
+        paintedFull[start] = true;
+        stack[top++] = start;
+        while (top > 0) {
+            int site = stack[--top];
+            int r = site / sideLen + 1;
+            int c = site % sideLen + 1;
+            paint(r, c, StdDraw.BOOK_LIGHT_BLUE);
+            if (r > 1) {
+                top = push(r - 1, c, top);
+            }
+            if (r < sideLen) {
+                top = push(r + 1, c, top);
+            }
+            if (c > 1) {
+                top = push(r, c - 1, top);
+            }
+            if (c < sideLen) {
+                top = push(r, c + 1, top);
+            }
+        }
+    }
+
+    private int push(int row, int col, int top) {
+        int site = (row - 1) * sideLen + col - 1;
+        if (!paintedFull[site] && perc.isOpen(row, col)) {
+            paintedFull[site] = true;
+            stack[top++] = site;
+        }
+        return top;
+    }
+
+    // paints a batch of events from the stream and shows it if a frame is due
+    @Override
+    public void onEvents(long[] events, int count) {
+        if (openSeen < 0 && !overflowed) {
+            openSeen = 0;
+        }
+        for (int i = 0; i < count; ++i) {
+            long event = events[i];
+            int row = PercolationEventStream.row(event);
+            int col = PercolationEventStream.col(event);
+            switch (PercolationEventStream.type(event)) {
+                case PercolationEventStream.OPENED:
+                    if (openSeen >= 0) {
+                        ++openSeen;
+                    }
+                    if (!paintedFull[(row - 1) * sideLen + col - 1]) {
+                        paint(row, col, StdDraw.WHITE);
+                    }
+                    break;
+                case PercolationEventStream.FULL:
+                    paintedFull[(row - 1) * sideLen + col - 1] = true;
+                    paint(row, col, StdDraw.BOOK_LIGHT_BLUE);
+                    break;
+                default:
+                    percolatedSeen = true;
+                    break;
+            }
+        }
+        show(false);
+    }
+
+    // events were lost: repaints every site from the grid's published state, the only part of
+    // the grid that may be read from this thread; the grid keeps changing meanwhile, but sites
+    // only ever get opened and filled, so this never shows a site in a state it has left,
+    // and the events that follow catch up with the rest
+    @Override
+    public void onOverflow(long lost) {
+        overflowed = true;
+        PercolationVisualizer.drawSites(sideLen, perc::publishedOpenRow, perc::publishedFullRow);
+        syncPaintedFull(perc::publishedFullRow);
+        show(true);
+    }
+
+    // repaints the status line
+    private void drawStatus() {
+        int n = sideLen;
+        int open;
+        boolean percolates;
+        if (overflowed) {
+            open = perc.publishedOpenSites();
+            percolates = percolatedSeen || perc.publishedPercolates();
+        } else if (openSeen >= 0) {
+            open = openSeen;
+            percolates = percolatedSeen;
+        } else {
+            open = perc.numberOfOpenSites();
+            percolates = perc.percolates();
+        }
+        StdDraw.setPenColor(StdDraw.WHITE);
+        StdDraw.filledRectangle(n / 2.0, -0.025 * n, 0.55 * n, 0.025 * n);
+        StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.text(0.25 * n, -0.025 * n, open + " open sites");
+        if (percolates) StdDraw.text(0.75 * n, -0.025 * n, "percolates");
+        else StdDraw.text(0.75 * n, -0.025 * n, "does not percolate");
+    }
+
+    // shows the canvas if a frame is due, or always if force is set;
+    // returns whether a frame was shown
+    public boolean show(boolean force) {
+        long now = System.nanoTime();
+        if (!force && now - lastFrame < frameNanos) {
+            return false;
+        }
+        drawStatus();
+        StdDraw.show();
+        lastFrame = now;
+        return true;
+    }
+}
@@ -1,51 +1,253 @@
 import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.StdStats;
 
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class PercolationStats {
 
+    // z value of the 95% confidence interval
+    static final double CONFIDENCE_95 = 1.96;
+
+    // half-width target of a run that always does all its trials
+    private static final double NO_TARGET = -1;
+
+    // an adaptive run never stops before this many trials:
+    // the sample stddev of a handful of trials is too noisy to stop on
+    private static final int MIN_ADAPTIVE_TRIALS = 10;
+
+    // how a trial chooses the sites to open
+    public enum Strategy {
+        // random (row, col) draws with replacement on a Percolation, as in the assignment
+        SAMPLING,
+        // a lazily drawn random permutation of the sites on a CompactPercolation:
+        // no wasted draws, no isFull structure, stops at the first percolating open
+        PERMUTATION
+    }
+
     private final int sideLen;
     private final int trialNum;
+    private final Strategy strategy;
     private final double[] thresholds;
     private final double mean;
     private final double standardDev;
 
     // perform independent trials on an n-by-n grid
+    // (the master seed is drawn from StdRandom, so StdRandom.setSeed() still fixes the results)
     public PercolationStats(int n, int trials) {
-        if (n <= 0 || trials <= 0) {
+        this(n, trials, StdRandom.uniform(Long.MAX_VALUE), 1);
+    }
+
+    // perform independent trials on an n-by-n grid using the given number of threads;
+    // trial i always draws from the stream derived from (seed, i), so the results
+    // are the same for any thread count
+    public PercolationStats(int n, int trials, long seed, int threads) {
+        this(n, trials, seed, threads, Strategy.SAMPLING);
+    }
+
+    // same as above with the given trial strategy
+    public PercolationStats(int n, int trials, long seed, int threads, Strategy strategy) {
+        this(n, trials, NO_TARGET, seed, threads, strategy, 0, null);
+    }
+
+    // runs trials firstTrial, ..., firstTrial + trials - 1 of the given seed on this thread, so a run
+    // can be extended later by the trials it is missing; the grids come from the caller's workspace,
+    // so a caller running many short runs on one thread allocates its grids once
+    PercolationStats(int n, int trials, long seed, Strategy strategy, int firstTrial, Workspace grids) {
+        this(n, trials, NO_TARGET, seed, 1, strategy, firstTrial, grids);
+    }
+
+    // runs trials until the 95% confidence interval half-width 1.96 s / sqrt(T)
+    // is at most halfWidth, or until maxTrials trials; the stopping point only
+    // depends on the thresholds in trial order, so it is the same for any thread count
+    public static PercolationStats untilHalfWidth(int n, double halfWidth, int maxTrials,
+                                                  long seed, int threads, Strategy strategy) {
+        if (!(halfWidth > 0)) {
+            throw new IllegalArgumentException("The half-width is not positive");
+        }
+        return new PercolationStats(n, maxTrials, halfWidth, seed, threads, strategy, 0, null);
+    }
+
+    private PercolationStats(int n, int maxTrials, double halfWidth, long seed, int threads, Strategy strategy,
+                             int firstTrial, Workspace workspace) {
+        if (n <= 0 || maxTrials <= 0 || firstTrial < 0) {
             throw new IllegalArgumentException("Negative numbers in arguments");
         }
+        if (firstTrial > Integer.MAX_VALUE - maxTrials) {
+            throw new IllegalArgumentException("The trial range is too large");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads is <= 0");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("The strategy is null");
+        }
+        // checked here, before any trial: the grids are only built by the workers
+        int maxSide = strategy == Strategy.PERMUTATION ? CompactPercolation.MAX_SIDE : Percolation.MAX_SIDE;
+        if (n > maxSide) {
+            throw new IllegalArgumentException("The grid is too large for " + strategy + ": n <= " + maxSide);
+        }
         sideLen = n;
-        trialNum = trials;
+        this.strategy = strategy;
 
-        thresholds = new double[trials];
-        for (int i = 0; i < trials; ++i) {
-            Percolation iGrid = new Percolation(n);
-            thresholds[i] = getThreshold(iGrid);
+        TrialRun run = new TrialRun(maxTrials, halfWidth);
+        if (threads == 1) {
+            Workspace grids = workspace == null ? new Workspace() : workspace;
+            grids.resize(n);
+            for (int i = 0; i < maxTrials && !run.isDone(i); ++i) {
+                run.complete(i, runTrial(seed, firstTrial + i, grids));
+            }
+        } else {
+            runParallel(run, seed, firstTrial, Math.min(threads, maxTrials));
         }
+        thresholds = run.thresholds();
+        trialNum = thresholds.length;
 
         mean = StdStats.mean(thresholds);
         standardDev = devCalc(thresholds);
     }
 
+    // thresholds of one run, folded in trial order into a running mean and variance (Welford)
+    // that decides when the run may stop
+    private static final class TrialRun {
+
+        private final double target;
+        private final double[] results;
+        private final boolean[] finished;
+        // trials [0, folded) are folded into the running statistics
+        private int folded = 0;
+        private double runningMean = 0;
+        private double runningM2 = 0;
+        // number of trials the run needs; only trials below it are started
+        private volatile int needed;
+
+        TrialRun(int maxTrials, double target) {
+            this.target = target;
+            results = new double[maxTrials];
+            finished = new boolean[maxTrials];
+            needed = maxTrials;
+        }
+
+        // is the result of trial i no longer needed?
+        boolean isDone(int trial) {
+            return trial >= needed;
+        }
+
+        synchronized void complete(int trial, double threshold) {
+            results[trial] = threshold;
+            finished[trial] = true;
+            while (folded < needed && finished[folded]) {
+                double x = results[folded];
+                ++folded;
+                double delta = x - runningMean;
+                runningMean += delta / folded;
+                runningM2 += delta * (x - runningMean);
+                if (folded >= MIN_ADAPTIVE_TRIALS
+                        && CONFIDENCE_95 * Math.sqrt(runningM2 / (folded - 1) / folded) <= target) {
+                    needed = folded;
+                }
+            }
+        }
+
+        synchronized double[] thresholds() {
+            return Arrays.copyOf(results, needed);
+        }
+    }
+
+    // workers pull trial indices from a shared counter until the run has what it needs
+    private void runParallel(TrialRun run, long seed, int firstTrial, int threads) {
+        AtomicInteger next = new AtomicInteger();
+        try (Workers workers = new Workers(threads)) {
+            workers.run(threads, w -> {
+                Workspace grids = new Workspace();
+                grids.resize(sideLen);
+                for (int i = next.getAndIncrement(); !run.isDone(i); i = next.getAndIncrement()) {
+                    run.complete(i, runTrial(seed, firstTrial + i, grids));
+                }
+            });
+        }
+    }
+
+    // the grids of one worker, allocated by its first trial and reset by the next ones,
+    // so a run allocates one grid per thread instead of one per trial
+    static final class Workspace {
+        private int sideLen;
+        private Percolation grid;
+        private CompactPercolation compactGrid;
+        private int[] order;
+
+        // the following trials are on n-by-n grids: the grids of another size are dropped
+        void resize(int n) {
+            if (n != sideLen) {
+                sideLen = n;
+                grid = null;
+                compactGrid = null;
+                order = null;
+            }
+        }
+    }
+
+    private double runTrial(long seed, int trial, Workspace grids) {
+        if (PercolationMetrics.ENABLED) {
+            long start = System.nanoTime();
+            double threshold = runTrialUntimed(seed, trial, grids);
+            PercolationMetrics.TRIAL_NANOS.record(System.nanoTime() - start);
+            return threshold;
+        }
+        return runTrialUntimed(seed, trial, grids);
+    }
+
+    private double runTrialUntimed(long seed, int trial, Workspace grids) {
+        SplittableRandom random = new SplittableRandom(trialSeed(seed, trial));
+        if (strategy == Strategy.PERMUTATION) {
+            if (grids.compactGrid == null) {
+                grids.compactGrid = new CompactPercolation(sideLen);
+                grids.order = new int[sideLen * sideLen];
+            } else {
+                grids.compactGrid.reset();
+            }
+            return getPermutationThreshold(grids.compactGrid, grids.order, random);
+        }
+        if (grids.grid == null) {
+            grids.grid = new Percolation(sideLen);
+        } else {
+            grids.grid.reset();
+        }
+        return getThreshold(grids.grid, random);
+    }
+
+    // independent seed of the trial-th stream (SplitMix64 finalizer over the master seed)
+    static long trialSeed(long seed, int trial) {
+        long z = seed + (trial + 1L) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     private double devCalc(double[] arr) {
         if (trialNum == 1) {
             return Double.NaN;
         }
-        return StdStats.stddev(thresholds);
+        return StdStats.stddev(arr);
     }
 
 
-    private double getThreshold(Percolation grid) {
+    private double getThreshold(Percolation grid, SplittableRandom random) {
         int randRow;
         int randCol;
 
         while (!grid.percolates()) {
-            randRow = StdRandom.uniform(sideLen);
-            randCol = StdRandom.uniform(sideLen);
+            randRow = random.nextInt(sideLen);
+            randCol = random.nextInt(sideLen);
             ++randRow;
             ++randCol;
             if (!grid.isOpen(randRow, randCol))
                 grid.open(randRow, randCol);
+            else if (PercolationMetrics.ENABLED)
+                PercolationMetrics.WASTED_DRAWS.increment();
+            if (PercolationMetrics.ENABLED)
+                PercolationMetrics.SAMPLED_DRAWS.increment();
         }
 
         return (double) grid.numberOfOpenSites() /
@@ -53,6 +255,25 @@ public class PercolationStats {
                         (sideLen * sideLen);
     }
 
+    // Fisher-Yates over the site indices, one swap per opened site:
+    // sites[k] == 0 stands for k, other entries hold the moved index + 1,
+    // so the permutation only needs zeroing; sites is reused across trials
+    private double getPermutationThreshold(CompactPercolation grid, int[] sites, SplittableRandom random) {
+        int total = sideLen * sideLen;
+        Arrays.fill(sites, 0);
+
+        for (int i = 0; !grid.percolates(); ++i) {
+            int j = i + random.nextInt(total - i);
+            int picked = sites[j] == 0 ? j : sites[j] - 1;
+            sites[j] = sites[i] == 0 ? i + 1 : sites[i];
+            grid.openSite(picked);
+        }
+
+        return (double) grid.numberOfOpenSites() /
+                // -----------------------------
+                        total;
+    }
+
 
     // sample mean of percolation threshold
     public double mean() {
@@ -64,27 +285,55 @@ public class PercolationStats {
         return standardDev;
     }
 
+    // threshold of every trial performed, in trial order
+    double[] thresholds() {
+        return thresholds.clone();
+    }
+
+    // number of trials performed
+    public int trials() {
+        return trialNum;
+    }
+
     // low endpoint of 95% confidence interval
     public double confidenceLo() {
-        return (mean() - (1.96 * standardDev)) /
-                // ---------------------------
-                     Math.sqrt(trialNum);
+        return mean() - CONFIDENCE_95 * standardDev /
+                        // -------------------------
+                           Math.sqrt(trialNum);
     }
 
     // high endpoint of 95% confidence interval
     public double confidenceHi() {
-        return (mean() + (1.96 * standardDev)) /
-                // ---------------------------
-                    Math.sqrt(trialNum);
+        return mean() + CONFIDENCE_95 * standardDev /
+                        // -------------------------
+                           Math.sqrt(trialNum);
     }
 
 
     // test client (see below)
+    // usage: java PercolationStats n trials [seed threads [sampling|permutation [halfWidth]]]
+    // (with halfWidth, trials is the maximum number of trials)
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
         int trials = Integer.parseInt(args[1]);
 
-        PercolationStats test = new PercolationStats(n, trials);
+        PercolationStats test;
+        if (args.length >= 4) {
+            long seed = Long.parseLong(args[2]);
+            int threads = Integer.parseInt(args[3]);
+            Strategy strategy = Strategy.SAMPLING;
+            if (args.length >= 5) {
+                strategy = Strategy.valueOf(args[4].toUpperCase());
+            }
+            if (args.length >= 6) {
+                double halfWidth = Double.parseDouble(args[5]);
+                test = untilHalfWidth(n, halfWidth, trials, seed, threads, strategy);
+            } else {
+                test = new PercolationStats(n, trials, seed, threads, strategy);
+            }
+        } else {
+            test = new PercolationStats(n, trials);
+        }
         System.out.print("mean                        = ");
         System.out.print(test.mean());
         System.out.println();
@@ -98,5 +347,11 @@ public class PercolationStats {
         System.out.print(", ");
         System.out.print(test.confidenceHi());
         System.out.println("]");
+
+        if (test.trials() != trials) {
+            System.out.print("trials                      = ");
+            System.out.print(test.trials());
+            System.out.println();
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,10 @@
 /******************************************************************************
  *  Compilation:  javac PercolationVisualizer.java
- *  Execution:    java PercolationVisualizer input.txt
- *  Dependencies: Percolation.java
+ *  Execution:    java PercolationVisualizer input.txt [fps]
+ *  Dependencies: Percolation.java SiteReader.java PercolationRenderer.java
  *
- *  This program takes the name of a file as a command-line argument.
- *  From that file, it
+ *  This program takes the name of a file (text or binary, see SiteReader)
+ *  as a command-line argument. From that file, it
  *
  *    - Reads the grid size n of the percolation system.
  *    - Creates an n-by-n grid of sites (intially all blocked)
@@ -14,12 +14,18 @@
  *  open sites (that aren't full) in white, and blocked sites in black,
  *  with with site (1, 1) in the upper left-hand corner.
  *
+ *  Only the sites that changed are repainted after each open. With the
+ *  optional fps argument, frames are shown at most fps times per second
+ *  and the sites opened in between are applied without pausing, so large
+ *  replays finish quickly; without it, every site gets a frame and a
+ *  DELAY pause.
+ *
  ******************************************************************************/
 
-import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdDraw;
 
 import java.awt.Font;
+import java.util.function.IntFunction;
 
 public class PercolationVisualizer {
 
@@ -28,21 +34,38 @@ public class PercolationVisualizer {
 
     // draw n-by-n percolation system
     public static void draw(Percolation perc, int n) {
+        int opened = drawSites(n, perc::openRow, perc::fullRow);
+
+        // write status text
+        StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.text(0.25 * n, -0.025 * n, opened + " open sites");
+        if (perc.percolates()) StdDraw.text(0.75 * n, -0.025 * n, "percolates");
+        else StdDraw.text(0.75 * n, -0.025 * n, "does not percolate");
+
+    }
+
+    // draw the sites of an n-by-n system from its open and full row bitmaps (see Percolation.openRow),
+    // without the status text; returns the number of open sites drawn
+    static int drawSites(int n, IntFunction<long[]> openRow, IntFunction<long[]> fullRow) {
         StdDraw.clear();
         StdDraw.setPenColor(StdDraw.BLACK);
         StdDraw.setXscale(-0.05 * n, 1.05 * n);
         StdDraw.setYscale(-0.05 * n, 1.05 * n);   // leave a border to write text
         StdDraw.filledSquare(n / 2.0, n / 2.0, n / 2.0);
 
-        // draw n-by-n grid
+        // draw n-by-n grid, one row bitmap at a time
         int opened = 0;
         for (int row = 1; row <= n; row++) {
+            long[] open = openRow.apply(row);
+            long[] full = fullRow.apply(row);
             for (int col = 1; col <= n; col++) {
-                if (perc.isFull(row, col)) {
+                long bit = 1L << (col - 1);
+                if ((full[(col - 1) >>> 6] & bit) != 0) {
                     StdDraw.setPenColor(StdDraw.BOOK_LIGHT_BLUE);
                     opened++;
                 }
-                else if (perc.isOpen(row, col)) {
+                else if ((open[(col - 1) >>> 6] & bit) != 0) {
                     StdDraw.setPenColor(StdDraw.WHITE);
                     opened++;
                 }
@@ -51,36 +74,34 @@ public class PercolationVisualizer {
                 StdDraw.filledSquare(col - 0.5, n - row + 0.5, 0.45);
             }
         }
-
-        // write status text
-        StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
-        StdDraw.setPenColor(StdDraw.BLACK);
-        StdDraw.text(0.25 * n, -0.025 * n, opened + " open sites");
-        if (perc.percolates()) StdDraw.text(0.75 * n, -0.025 * n, "percolates");
-        else StdDraw.text(0.75 * n, -0.025 * n, "does not percolate");
-
+        return opened;
     }
 
     public static void main(String[] args) {
-        In in = new In(args[0]);      // input file
-        int n = in.readInt();         // n-by-n percolation system
+        SiteReader in = new SiteReader(args[0]);  // input file
+        int n = in.size();                        // n-by-n percolation system
+
+        int fps = 0;                              // frame limit, 0 = a frame per site
+        if (args.length > 1) fps = Integer.parseInt(args[1]);
 
         // turn on animation mode
         StdDraw.enableDoubleBuffering();
 
-        // repeatedly read in sites to open and draw resulting system
+        // repeatedly read in sites to open and draw the sites that changed
         Percolation perc = new Percolation(n);
-        draw(perc, n);
-        StdDraw.show();
+        PercolationRenderer renderer = new PercolationRenderer(perc, n, fps);
+        renderer.drawAll();
+        renderer.show(true);
         StdDraw.pause(DELAY);
-        while (!in.isEmpty()) {
-            int i = in.readInt();
-            int j = in.readInt();
-            perc.open(i, j);
-            draw(perc, n);
-            StdDraw.show();
-            StdDraw.pause(DELAY);
+        while (in.next()) {
+            perc.open(in.row(), in.col());
+            renderer.siteOpened(in.row(), in.col());
+            if (renderer.show(false) && fps == 0) {
+                StdDraw.pause(DELAY);
+            }
         }
+        renderer.show(true);
+        in.close();
     }
 }
 
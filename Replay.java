@@ -0,0 +1,103 @@
+/******************************************************************************
+ *  Compilation:  javac Replay.java
+ *  Execution:    java Replay input.txt [checkpoint [every]]
+ *  Dependencies: Percolation.java SiteReader.java BinaryChannel.java
+ *
+ *  Opens every site of an input file (text or binary, see SiteReader)
+ *  without drawing, then prints the number of open sites and whether the
+ *  system percolates.
+ *
+ *  With a checkpoint file, the grid and the number of sites read so far
+ *  are saved to it after every `every` sites (default 10,000,000). If the
+ *  file exists when the replay starts, the replay resumes from it instead
+ *  of starting over. A checkpoint is written to checkpoint.tmp first and
+ *  then moved over the old one, so a crash never leaves a torn file.
+ *
+ ******************************************************************************/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Replay {
+
+    // first int of a checkpoint file: "PCKP", followed by the sites read and a Percolation snapshot
+    private static final int CHECKPOINT_MAGIC = 0x50434B50;
+
+    // default number of sites between two checkpoints
+    private static final long EVERY = 10_000_000L;
+
+    // sites per openAll() call
+    private static final int BATCH = 1 << 16;
+
+    private Replay() {
+    }
+
+    private static void saveCheckpoint(Path file, long sitesRead, Percolation grid) {
+        try {
+            BinaryChannel.writeAtomically(file, out -> {
+                out.putInt(CHECKPOINT_MAGIC);
+                out.putLong(sitesRead);
+                grid.writeTo(out);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + file, e);
+        }
+    }
+
+    public static void main(String[] args) {
+        Path checkpoint = args.length > 1 ? Paths.get(args[1]) : null;
+        long every = args.length > 2 ? Long.parseLong(args[2]) : EVERY;
+        if (every <= 0) {
+            throw new IllegalArgumentException("The checkpoint interval is <= 0");
+        }
+
+        try (SiteReader in = new SiteReader(args[0])) {
+            Percolation grid;
+            long sitesRead = 0;
+            if (checkpoint != null && Files.exists(checkpoint)) {
+                try (FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+                    BinaryChannel saved = new BinaryChannel(channel, true);
+                    if (saved.getInt() != CHECKPOINT_MAGIC) {
+                        throw new IllegalArgumentException("Not a replay checkpoint: " + checkpoint);
+                    }
+                    sitesRead = saved.getLong();
+                    grid = Percolation.readFrom(saved);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read checkpoint " + checkpoint, e);
+                }
+                if (grid.size() != in.size()) {
+                    throw new IllegalArgumentException("The checkpoint is of a " + grid.size() + "-by-"
+                            + grid.size() + " grid, but " + args[0] + " is " + in.size() + "-by-" + in.size());
+                }
+                if (!in.skip(sitesRead)) {
+                    throw new IllegalArgumentException("The checkpoint is past the end of " + args[0]);
+                }
+                System.out.println("resumed after " + sitesRead + " sites");
+            } else {
+                grid = new Percolation(in.size());
+            }
+
+            int[] pairs = new int[2 * BATCH];
+            long lastCheckpoint = sitesRead;
+            for (int count = in.read(pairs); count > 0; count = in.read(pairs)) {
+                grid.openAll(pairs, count);
+                sitesRead += count / 2;
+                if (checkpoint != null && sitesRead - lastCheckpoint >= every) {
+                    saveCheckpoint(checkpoint, sitesRead, grid);
+                    lastCheckpoint = sitesRead;
+                }
+            }
+            if (checkpoint != null && sitesRead != lastCheckpoint) {
+                saveCheckpoint(checkpoint, sitesRead, grid);
+            }
+
+            System.out.println(grid.numberOfOpenSites() + " open sites");
+            System.out.println(grid.percolates() ? "percolates" : "does not percolate");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/******************************************************************************
+ *  Compilation:  javac SiteReader.java
+ *  Execution:    java SiteReader input.txt output.bin
+ *  Dependencies: none
+ *
+ *  Reads percolation input files: the grid size n followed by the
+ *  sites (row i, column j) to open. Two formats are accepted:
+ *
+ *    - text, as in input50.txt: whitespace-separated decimal integers;
+ *    - binary: the int32 MAGIC, the int32 n, then one int32 row and
+ *      one int32 col per site, all big-endian.
+ *
+ *  The file is memory-mapped in windows of up to WINDOW bytes and parsed
+ *  in place, so reading a site allocates nothing. The main method converts
+ *  a text file into the binary format.
+ *
+ ******************************************************************************/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+public class SiteReader implements AutoCloseable {
+
+    // first four bytes of a binary file: "PERC"
+    public static final int MAGIC = 0x50455243;
+
+    // bytes mapped at a time; a multiple of 8, so binary pairs never straddle two windows
+    private static final long WINDOW = 1L << 28;
+
+    private final String name;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean binary;
+    private final int sideLen;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int row;
+    private int col;
+
+    // opens the file and reads the grid size n
+    public SiteReader(String fileName) {
+        name = fileName;
+        try {
+            channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+            fileSize = channel.size();
+            windowStart = 0;
+            window = map(0);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open " + fileName, e);
+        }
+
+        binary = fileSize >= 8 && window.getInt(0) == MAGIC;
+        if (binary) {
+            if ((fileSize - 8) % 8 != 0) {
+                close();
+                throw new IllegalArgumentException("Truncated binary file " + fileName);
+            }
+            window.position(4);
+            sideLen = window.getInt();
+        } else {
+            int n = readText();
+            if (n < 0) {
+                close();
+                throw new NoSuchElementException("No grid size in " + fileName);
+            }
+            sideLen = n;
+        }
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, fileSize - start));
+    }
+
+    // maps the window after the current one; false at the end of the file
+    private boolean nextWindow() {
+        long next = windowStart + window.limit();
+        if (next >= fileSize) {
+            return false;
+        }
+        try {
+            window = map(next);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + name, e);
+        }
+        windowStart = next;
+        return true;
+    }
+
+    // next byte of the file, or -1 at the end
+    private int nextByte() {
+        if (!window.hasRemaining() && !nextWindow()) {
+            return -1;
+        }
+        return window.get();
+    }
+
+    // next non-negative decimal integer, or -1 at the end of the file
+    private int readText() {
+        int b = nextByte();
+        while (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+            b = nextByte();
+        }
+        if (b == -1) {
+            return -1;
+        }
+        int value = 0;
+        do {
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                throw new InputMismatchException("Unexpected '" + (char) b + "' at byte "
+                        + (windowStart + window.position() - 1) + " of " + name);
+            }
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new InputMismatchException("Integer too large at byte "
+                        + (windowStart + window.position() - 1) + " of " + name);
+            }
+            value = value * 10 + digit;
+            b = nextByte();
+        } while (b != -1 && b != ' ' && b != '\n' && b != '\r' && b != '\t');
+        return value;
+    }
+
+    // grid size n from the header
+    public int size() {
+        return sideLen;
+    }
+
+    // is the file in the binary format?
+    public boolean isBinary() {
+        return binary;
+    }
+
+    // advances to the next site; false at the end of the file
+    public boolean next() {
+        if (binary) {
+            if (!window.hasRemaining() && !nextWindow()) {
+                return false;
+            }
+            row = window.getInt();
+            col = window.getInt();
+            return true;
+        }
+        int r = readText();
+        if (r == -1) {
+            return false;
+        }
+        int c = readText();
+        if (c == -1) {
+            throw new NoSuchElementException("Row " + r + " without a column at the end of " + name);
+        }
+        row = r;
+        col = c;
+        return true;
+    }
+
+    // row of the current site
+    public int row() {
+        return row;
+    }
+
+    // column of the current site
+    public int col() {
+        return col;
+    }
+
+    // skips the next sites sites; false if the file ends first,
+    // in which case the reader is left at the end of the file in both formats
+    public boolean skip(long sites) {
+        if (sites < 0) {
+            throw new IllegalArgumentException("Negative number of sites to skip");
+        }
+        if (!binary) {
+            for (long i = 0; i < sites; ++i) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        long position = windowStart + window.position();
+        boolean inFile = sites <= (fileSize - position) / 8;
+        long target = inFile ? position + 8 * sites : fileSize;
+        long start = target - target % WINDOW;
+        if (start != windowStart) {
+            try {
+                window = map(start);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + name, e);
+            }
+            windowStart = start;
+        }
+        window.position((int) (target - start));
+        return inFile;
+    }
+
+    // reads up to pairs.length / 2 sites into pairs as {row1, col1, row2, col2, ...};
+    // returns the number of ints written, 0 at the end of the file
+    public int read(int[] pairs) {
+        int count = 0;
+        while (count + 1 < pairs.length && next()) {
+            pairs[count++] = row;
+            pairs[count++] = col;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close " + name, e);
+        }
+    }
+
+    // converts the text file in to the binary file out
+    public static void convert(String in, String out) {
+        try (SiteReader reader = new SiteReader(in);
+             FileChannel target = FileChannel.open(Paths.get(out), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(MAGIC);
+            buffer.putInt(reader.size());
+            while (reader.next()) {
+                if (buffer.remaining() < 8) {
+                    drain(buffer, target);
+                }
+                buffer.putInt(reader.row());
+                buffer.putInt(reader.col());
+            }
+            drain(buffer, target);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + out, e);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel target) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static void main(String[] args) {
+        convert(args[0], args[1]);
+    }
+}
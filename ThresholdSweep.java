@@ -0,0 +1,354 @@
+/******************************************************************************
+ *  Compilation:  javac ThresholdSweep.java
+ *  Execution:    java ThresholdSweep nMin nMax trials [seed [threads [sampling|permutation [cacheDir [out]]]]]
+ *  Dependencies: PercolationStats.java BinaryChannel.java Workers.java StdStats.java
+ *
+ *  Estimates the percolation threshold for n = nMin, 2 nMin, 4 nMin, ... up to
+ *  nMax, with the given number of trials each, and writes one line per n:
+ *  the trials, how many of them were computed by this run, the mean, the
+ *  stddev and the 95% confidence interval. The output is CSV, or JSON if out
+ *  ends with ".json"; without out the CSV goes to standard output.
+ *
+ *  Trial i of a size always draws from the stream of (seed, i) (see
+ *  PercolationStats.trialSeed), so the thresholds of trials 0 .. k - 1 are
+ *  the same whichever run computed them. They are kept in cacheDir, one file
+ *  per (n, strategy, seed), and a sweep only computes the trials its cache
+ *  files do not have yet: rerunning it is free and asking for more trials
+ *  only runs the new ones.
+ *
+ *  The missing trials are cut into jobs of at most CHUNK trials and run on
+ *  a pool of threads, largest n first, so the long jobs do not end up last.
+ *  Each thread keeps its grid from one job to the next of the same size.
+ *  The trials of a size are saved as they complete, the finished prefix at
+ *  most every SAVE_NANOS, so an interrupted sweep keeps most of its work.
+ *
+ ******************************************************************************/
+
+import edu.princeton.cs.algs4.StdStats;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThresholdSweep {
+
+    // first int of a cache file: "PSWP", followed by n, the strategy, the seed,
+    // the trial count and the thresholds of trials 0 .. count - 1
+    private static final int CACHE_MAGIC = 0x50535750;
+
+    // most trials in one job
+    private static final int CHUNK = 16;
+
+    // least time between two saves of the same size's partial trials, in nanoseconds
+    private static final long SAVE_NANOS = 1_000_000_000L;
+
+    // default master seed; a sweep needs a fixed one to reuse its cache
+    private static final long SEED = 1;
+
+    // default cache directory
+    private static final String CACHE_DIR = "sweep-cache";
+
+    private final Path cacheDir;
+    private final long seed;
+    private final int threads;
+    private final PercolationStats.Strategy strategy;
+
+    // thresholds of one grid size
+    public static final class Result {
+        private final int sideLen;
+        private final double[] thresholds;
+        private final int computed;
+
+        private Result(int n, double[] thresholds, int computed) {
+            sideLen = n;
+            this.thresholds = thresholds;
+            this.computed = computed;
+        }
+
+        public int size() {
+            return sideLen;
+        }
+
+        public int trials() {
+            return thresholds.length;
+        }
+
+        // number of trials this sweep computed rather than read from the cache
+        public int computed() {
+            return computed;
+        }
+
+        public double mean() {
+            return StdStats.mean(thresholds);
+        }
+
+        public double stddev() {
+            if (thresholds.length == 1) {
+                return Double.NaN;
+            }
+            return StdStats.stddev(thresholds);
+        }
+
+        public double confidenceLo() {
+            return mean() - PercolationStats.CONFIDENCE_95 * stddev() / Math.sqrt(thresholds.length);
+        }
+
+        public double confidenceHi() {
+            return mean() + PercolationStats.CONFIDENCE_95 * stddev() / Math.sqrt(thresholds.length);
+        }
+    }
+
+    // one job: trials [from, to) of the size at slot
+    private static final class Job {
+        private final int slot;
+        private final int from;
+        private final int to;
+
+        Job(int slot, int from, int to) {
+            this.slot = slot;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    // trials of one size: thresholds [0, saved) are in the cache file, the jobs of trials
+    // [first, trials) complete in any order, and the finished prefix is saved as it grows
+    private final class Progress {
+        private final int sideLen;
+        private final double[] thresholds;
+        private final int first;
+        private final int trials;
+        private final boolean[] finished;
+        // jobs [0, prefix) are finished
+        private int prefix = 0;
+        private int saved;
+        private long lastSave = System.nanoTime();
+
+        Progress(int n, double[] thresholds, int first, int trials) {
+            sideLen = n;
+            this.thresholds = thresholds;
+            this.first = first;
+            this.trials = trials;
+            finished = new boolean[(trials - first + CHUNK - 1) / CHUNK];
+            saved = first;
+        }
+
+        // stores the thresholds of job, then saves the finished prefix if it is complete
+        // or if the last save is old enough; synchronized, so saves are in order
+        synchronized void complete(Job job, double[] done) {
+            System.arraycopy(done, 0, thresholds, job.from, done.length);
+            finished[(job.from - first) / CHUNK] = true;
+            while (prefix < finished.length && finished[prefix]) {
+                ++prefix;
+            }
+            int end = Math.min(first + prefix * CHUNK, trials);
+            long now = System.nanoTime();
+            if (end > saved && (prefix == finished.length || now - lastSave >= SAVE_NANOS)) {
+                writeCache(sideLen, Arrays.copyOf(thresholds, end));
+                saved = end;
+                lastSave = now;
+            }
+        }
+    }
+
+    // sweep caching its trials in cacheDir, running on the given number of threads
+    public ThresholdSweep(String cacheDir, long seed, int threads, PercolationStats.Strategy strategy) {
+        if (cacheDir == null || strategy == null) {
+            throw new IllegalArgumentException("The argument is null");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads is <= 0");
+        }
+        this.cacheDir = Paths.get(cacheDir);
+        this.seed = seed;
+        this.threads = threads;
+        this.strategy = strategy;
+    }
+
+    // thresholds of trials 0 .. trials - 1 for every size, in the order of sizes; the sizes must be distinct
+    public List<Result> run(int[] sizes, int trials) {
+        if (sizes == null) {
+            throw new IllegalArgumentException("The argument is null");
+        }
+        if (trials <= 0) {
+            throw new IllegalArgumentException("The argument is <= 0");
+        }
+        for (int n : sizes) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("The argument is <= 0");
+            }
+        }
+        // two slots of the same n would write the same cache file from two workers
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; ++i) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("The size " + sorted[i] + " is given twice");
+            }
+        }
+        try {
+            Files.createDirectories(cacheDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create " + cacheDir, e);
+        }
+
+        double[][] thresholds = new double[sizes.length][];
+        int[] cached = new int[sizes.length];
+        Progress[] progress = new Progress[sizes.length];
+        List<Job> jobs = new ArrayList<>();
+        for (int slot = 0; slot < sizes.length; ++slot) {
+            double[] known = readCache(sizes[slot]);
+            cached[slot] = Math.min(known.length, trials);
+            thresholds[slot] = Arrays.copyOf(known, Math.max(known.length, trials));
+            for (int from = cached[slot]; from < trials; from += CHUNK) {
+                jobs.add(new Job(slot, from, Math.min(from + CHUNK, trials)));
+            }
+            progress[slot] = new Progress(sizes[slot], thresholds[slot], cached[slot], trials);
+        }
+        // stable sort: within a size the jobs stay in trial order
+        jobs.sort((a, b) -> Integer.compare(sizes[b.slot], sizes[a.slot]));
+
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(threads, jobs.size()));
+        try (Workers pool = new Workers(workers)) {
+            pool.run(workers, w -> {
+                // the jobs come largest n first, so a worker mostly keeps one grid size
+                PercolationStats.Workspace grids = new PercolationStats.Workspace();
+                for (int j = next.getAndIncrement(); j < jobs.size(); j = next.getAndIncrement()) {
+                    Job job = jobs.get(j);
+                    double[] done = new PercolationStats(sizes[job.slot], job.to - job.from, seed, strategy,
+                            job.from, grids).thresholds();
+                    progress[job.slot].complete(job, done);
+                }
+            });
+        }
+
+        List<Result> results = new ArrayList<>(sizes.length);
+        for (int slot = 0; slot < sizes.length; ++slot) {
+            results.add(new Result(sizes[slot], Arrays.copyOf(thresholds[slot], trials), trials - cached[slot]));
+        }
+        return results;
+    }
+
+    private Path cacheFile(int n) {
+        return cacheDir.resolve("n" + n + "-" + strategy.name().toLowerCase() + "-" + seed + ".trials");
+    }
+
+    // thresholds cached for n, an empty array if there are none
+    private double[] readCache(int n) {
+        Path file = cacheFile(n);
+        if (!Files.exists(file)) {
+            return new double[0];
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryChannel in = new BinaryChannel(channel, true);
+            if (in.getInt() != CACHE_MAGIC || in.getInt() != n || in.getInt() != strategy.ordinal()
+                    || in.getLong() != seed) {
+                throw new IllegalArgumentException("Not a cache file of this sweep: " + file);
+            }
+            int count = in.getInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("Corrupt cache file " + file);
+            }
+            double[] thresholds = new double[count];
+            in.getDoubles(thresholds);
+            return thresholds;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+    }
+
+    // replaces the cache file of n, through a temporary file so it is never torn
+    private void writeCache(int n, double[] thresholds) {
+        Path file = cacheFile(n);
+        try {
+            BinaryChannel.writeAtomically(file, out -> {
+                out.putInt(CACHE_MAGIC);
+                out.putInt(n);
+                out.putInt(strategy.ordinal());
+                out.putLong(seed);
+                out.putInt(thresholds.length);
+                out.putDoubles(thresholds);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    // one CSV line per result, after a header line
+    public static void writeCsv(List<Result> results, PrintStream out) {
+        out.println("n,trials,computed,mean,stddev,confidenceLo,confidenceHi");
+        for (Result r : results) {
+            out.println(r.size() + "," + r.trials() + "," + r.computed() + "," + r.mean() + ","
+                    + r.stddev() + "," + r.confidenceLo() + "," + r.confidenceHi());
+        }
+    }
+
+    // a JSON array of one object per result
+    public static void writeJson(List<Result> results, PrintStream out) {
+        out.println("[");
+        for (int i = 0; i < results.size(); ++i) {
+            Result r = results.get(i);
+            out.print("  {\"n\": " + r.size() + ", \"trials\": " + r.trials() + ", \"computed\": " + r.computed()
+                    + ", \"mean\": " + json(r.mean()) + ", \"stddev\": " + json(r.stddev())
+                    + ", \"confidenceLo\": " + json(r.confidenceLo())
+                    + ", \"confidenceHi\": " + json(r.confidenceHi()) + "}");
+            out.println(i + 1 < results.size() ? "," : "");
+        }
+        out.println("]");
+    }
+
+    // JSON has no NaN, the stddev of a single trial
+    private static String json(double value) {
+        return Double.isNaN(value) ? "null" : Double.toString(value);
+    }
+
+    public static void main(String[] args) {
+        int nMin = Integer.parseInt(args[0]);
+        int nMax = Integer.parseInt(args[1]);
+        int trials = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : SEED;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        PercolationStats.Strategy strategy = args.length > 5
+                ? PercolationStats.Strategy.valueOf(args[5].toUpperCase())
+                : PercolationStats.Strategy.SAMPLING;
+        String cacheDir = args.length > 6 ? args[6] : CACHE_DIR;
+        String out = args.length > 7 ? args[7] : null;
+        if (nMin <= 0 || nMax < nMin) {
+            throw new IllegalArgumentException("The size range is empty");
+        }
+
+        int count = 0;
+        for (long n = nMin; n <= nMax; n *= 2) {
+            ++count;
+        }
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; ++i) {
+            sizes[i] = nMin << i;
+        }
+
+        List<Result> results = new ThresholdSweep(cacheDir, seed, threads, strategy).run(sizes, trials);
+        if (out == null) {
+            writeCsv(results, System.out);
+            return;
+        }
+        try (PrintStream file = new PrintStream(out, "UTF-8")) {
+            if (out.endsWith(".json")) {
+                writeJson(results, file);
+            } else {
+                writeCsv(results, file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + out, e);
+        }
+    }
+}
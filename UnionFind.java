@@ -0,0 +1,33 @@
+/*
+ * Minimal union-find contract used by the percolation grids,
+ * so that a grid can choose its backing structure.
+ */
+interface UnionFind {
+
+    // canonical element of the set containing p
+    int find(int p);
+
+    // canonical element of the set containing p, without writing to the structure, so that
+    // several threads may look up roots at once while no union is running;
+    // implementations whose find() compresses paths must override it
+    default int root(int p) {
+        return find(p);
+    }
+
+    // merges the set containing p with the set containing q
+    void union(int p, int q);
+
+    // merges the distinct sets whose roots are rootP and rootQ and returns the root of the result
+    default int link(int rootP, int rootQ) {
+        union(rootP, rootQ);
+        return find(rootP);
+    }
+
+    // splits every set back into singletons, keeping the element count
+    void reset();
+
+    // are p and q in the same set?
+    default boolean connected(int p, int q) {
+        return find(p) == find(q);
+    }
+}
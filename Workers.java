@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/*
+ * A fixed pool of worker threads for the parallel parts of the percolation code.
+ * One pool serves any number of run() calls and is shut down by close(), so a
+ * caller with several parallel phases starts its threads once. With one thread
+ * there is no pool and run() calls the tasks on the caller's thread; a task that
+ * fails is reported the same way on both paths.
+ */
+final class Workers implements AutoCloseable {
+
+    private final int threads;
+    // null with one thread
+    private final ExecutorService pool;
+
+    Workers(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads is <= 0");
+        }
+        this.threads = threads;
+        pool = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    // runs task(0), ..., task(tasks - 1), at most threads() of them at once, and waits for all of them;
+    // whatever the first task to fail throws is the cause of an IllegalStateException("A worker failed")
+    void run(int tasks, IntConsumer task) {
+        if (pool == null || tasks == 1) {
+            try {
+                for (int t = 0; t < tasks; ++t) {
+                    task.accept(t);
+                }
+            } catch (RuntimeException | Error e) {
+                throw new IllegalStateException("A worker failed", e);
+            }
+            return;
+        }
+        List<Future<?>> running = new ArrayList<>(tasks);
+        try {
+            for (int t = 0; t < tasks; ++t) {
+                int id = t;
+                running.add(pool.submit(() -> task.accept(id)));
+            }
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A worker failed", e.getCause());
+        } finally {
+            for (Future<?> future : running) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
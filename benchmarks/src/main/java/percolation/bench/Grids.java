@@ -0,0 +1,94 @@
+package percolation.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+ * Bridge to the assignment classes. They live in the default package, which
+ * cannot be imported from a named package, and JMH refuses benchmarks in the
+ * default package. The handles are static final, so the JIT inlines them like
+ * direct calls.
+ */
+final class Grids {
+
+    // (int n) -> Percolation
+    static final MethodHandle NEW_PERCOLATION;
+    // (Percolation, int row, int col) -> void
+    static final MethodHandle OPEN;
+    // (Percolation, int[] pairs) -> void
+    static final MethodHandle OPEN_ALL;
+    // (Percolation, int row, int col) -> boolean
+    static final MethodHandle IS_OPEN;
+    // (Percolation, int row, int col) -> boolean
+    static final MethodHandle IS_FULL;
+    // (Percolation) -> boolean
+    static final MethodHandle PERCOLATES;
+    // (int n, int trials, long seed, int threads) -> PercolationStats
+    static final MethodHandle NEW_STATS;
+    // (PercolationStats) -> double
+    static final MethodHandle MEAN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> percolation = Class.forName("Percolation");
+            Class<?> stats = Class.forName("PercolationStats");
+
+            NEW_PERCOLATION = lookup.findConstructor(percolation, MethodType.methodType(void.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class));
+            OPEN = lookup.findVirtual(percolation, "open", MethodType.methodType(void.class, int.class, int.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, int.class));
+            OPEN_ALL = lookup.findVirtual(percolation, "openAll", MethodType.methodType(void.class, int[].class))
+                    .asType(MethodType.methodType(void.class, Object.class, int[].class));
+            IS_OPEN = lookup.findVirtual(percolation, "isOpen", MethodType.methodType(boolean.class, int.class, int.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, int.class, int.class));
+            IS_FULL = lookup.findVirtual(percolation, "isFull", MethodType.methodType(boolean.class, int.class, int.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, int.class, int.class));
+            PERCOLATES = lookup.findVirtual(percolation, "percolates", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            NEW_STATS = lookup.findConstructor(stats,
+                    MethodType.methodType(void.class, int.class, int.class, long.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class, int.class, long.class, int.class));
+            MEAN = lookup.findVirtual(stats, "mean", MethodType.methodType(double.class))
+                    .asType(MethodType.methodType(double.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Grids() {
+    }
+
+    static Object newPercolation(int n) throws Throwable {
+        return (Object) NEW_PERCOLATION.invokeExact(n);
+    }
+
+    static void open(Object grid, int row, int col) throws Throwable {
+        OPEN.invokeExact(grid, row, col);
+    }
+
+    static void openAll(Object grid, int[] pairs) throws Throwable {
+        OPEN_ALL.invokeExact(grid, pairs);
+    }
+
+    static boolean isOpen(Object grid, int row, int col) throws Throwable {
+        return (boolean) IS_OPEN.invokeExact(grid, row, col);
+    }
+
+    static boolean isFull(Object grid, int row, int col) throws Throwable {
+        return (boolean) IS_FULL.invokeExact(grid, row, col);
+    }
+
+    static boolean percolates(Object grid) throws Throwable {
+        return (boolean) PERCOLATES.invokeExact(grid);
+    }
+
+    static Object newStats(int n, int trials, long seed, int threads) throws Throwable {
+        return (Object) NEW_STATS.invokeExact(n, trials, seed, threads);
+    }
+
+    static double mean(Object stats) throws Throwable {
+        return (double) MEAN.invokeExact(stats);
+    }
+}
@@ -0,0 +1,73 @@
+package percolation.bench;
+
+import java.util.SplittableRandom;
+
+/*
+ * Site orders replayed by the benchmarks, as int[] of packed (row - 1) * n + (col - 1).
+ */
+final class OpenOrders {
+
+    private OpenOrders() {
+    }
+
+    // "random": every site of the n-by-n grid in random order
+    // "snake":  the sites of the snake pattern of snake13.txt / snake101.txt, in random order
+    static int[] create(String kind, int n, long seed) {
+        int[] sites;
+        switch (kind) {
+            case "random":
+                sites = new int[n * n];
+                for (int i = 0; i < sites.length; ++i) {
+                    sites[i] = i;
+                }
+                break;
+            case "snake":
+                sites = snake(n);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown open order: " + kind);
+        }
+        shuffle(sites, new SplittableRandom(seed));
+        return sites;
+    }
+
+    // one long path from the top-left corner to the bottom-right one: vertical runs in the
+    // even columns joined alternately at the bottom and at the top (n should be odd)
+    private static int[] snake(int n) {
+        boolean[] open = new boolean[n * n];
+        int count = 0;
+        for (int col = 0; col < n; ++col) {
+            if (col % 2 == 0) {
+                int first = col == 0 ? 0 : 1;
+                int last = col == n - 1 ? n - 1 : n - 2;
+                for (int row = first; row <= last; ++row) {
+                    open[row * n + col] = true;
+                }
+            } else {
+                int row = (col / 2) % 2 == 0 ? n - 2 : 1;
+                open[row * n + col] = true;
+            }
+        }
+        for (boolean site : open) {
+            if (site) {
+                ++count;
+            }
+        }
+        int[] sites = new int[count];
+        for (int i = 0, k = 0; i < open.length; ++i) {
+            if (open[i]) {
+                sites[k++] = i;
+            }
+        }
+        return sites;
+    }
+
+    private static void shuffle(int[] sites, SplittableRandom random) {
+        for (int i = sites.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int swap = sites[i];
+            sites[i] = sites[j];
+            sites[j] = swap;
+        }
+    }
+}
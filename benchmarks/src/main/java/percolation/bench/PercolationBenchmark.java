@@ -0,0 +1,103 @@
+package percolation.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Throughput of the Percolation API under a random and an adversarial (snake) open order.
+ *
+ *   replayOpens - new grid + open() of every site of the order, one op per replay
+ *                 (opens/s = ops/s * sites of the order, printed by setup)
+ *   replayBatch - new grid + one openAll() of the whole order, one op per replay
+ *   isOpen      - one query per op, cycling over all sites of a replayed grid
+ *   isFull      - same, for isFull
+ *   percolates  - on a replayed grid
+ *
+ * Run:  java -jar benchmarks/target/benchmarks.jar PercolationBenchmark -prof gc -rf json
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PercolationBenchmark {
+
+    @Param({"101", "1001"})
+    public int n;
+
+    @Param({"random", "snake"})
+    public String order;
+
+    private int[] sites;
+    private int[] pairs;
+    private Object replayed;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Throwable {
+        sites = OpenOrders.create(order, n, 42);
+        pairs = new int[2 * sites.length];
+        for (int i = 0; i < sites.length; ++i) {
+            pairs[2 * i] = sites[i] / n + 1;
+            pairs[2 * i + 1] = sites[i] % n + 1;
+        }
+        replayed = replay();
+        System.out.println("# " + sites.length + " sites per replay");
+    }
+
+    private Object replay() throws Throwable {
+        Object grid = Grids.newPercolation(n);
+        for (int site : sites) {
+            Grids.open(grid, site / n + 1, site % n + 1);
+        }
+        return grid;
+    }
+
+    // next site of the grid, row-major, wrapping around
+    private int nextSite() {
+        int site = cursor;
+        cursor = site + 1 == n * n ? 0 : site + 1;
+        return site;
+    }
+
+    @Benchmark
+    public Object replayOpens() throws Throwable {
+        return replay();
+    }
+
+    @Benchmark
+    public Object replayBatch() throws Throwable {
+        Object grid = Grids.newPercolation(n);
+        Grids.openAll(grid, pairs);
+        return grid;
+    }
+
+    @Benchmark
+    public boolean isOpen() throws Throwable {
+        int site = nextSite();
+        return Grids.isOpen(replayed, site / n + 1, site % n + 1);
+    }
+
+    @Benchmark
+    public boolean isFull() throws Throwable {
+        int site = nextSite();
+        return Grids.isFull(replayed, site / n + 1, site % n + 1);
+    }
+
+    @Benchmark
+    public boolean percolates() throws Throwable {
+        return Grids.percolates(replayed);
+    }
+}
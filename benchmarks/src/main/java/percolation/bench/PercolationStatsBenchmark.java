@@ -0,0 +1,43 @@
+package percolation.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * End-to-end PercolationStats throughput: one op is a full run of TRIALS trials.
+ * The n and threads parameters give the scaling curves over grid size and core count,
+ * e.g. -p threads=1,2,4,8 to compare thread counts on the same trials.
+ *
+ * Run:  java -jar benchmarks/target/benchmarks.jar PercolationStatsBenchmark -prof gc -rf json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PercolationStatsBenchmark {
+
+    private static final int TRIALS = 32;
+
+    @Param({"64", "128", "256", "512"})
+    public int n;
+
+    @Param({"1"})
+    public int threads;
+
+    @Benchmark
+    public double trials() throws Throwable {
+        return Grids.mean(Grids.newStats(n, TRIALS, 42, threads));
+    }
+}